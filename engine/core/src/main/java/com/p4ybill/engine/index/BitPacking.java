@@ -0,0 +1,149 @@
+package com.p4ybill.engine.index;
+
+import java.util.Arrays;
+
+/**
+ * Packs blocks of {@link #BLOCK_SIZE} non negative integers with the same number of bits each, in the layout of
+ * SIMD-BP128: the value i of a block is in the lane i % {@link #LANES}, each lane packs its 32 values in as many
+ * 32-bit words as the bits of a value, and the words of the lanes are interleaved. So a row of 4 consecutive values
+ * is unpacked from a row of 4 words with the same shifts and mask, which is a single operation on a 4-lane vector.
+ *
+ * The blocks are unpacked with the same operations one lane at a time. The experimental {@link VectorBitUnpacker}
+ * unpacks them with the vector API of the JDK (jdk.incubator.vector) instead, when it is compiled and the runtime
+ * has the module. Both give the same values, the layout does not depend on the vectors of the CPU.
+ */
+final class BitPacking {
+    static final int BLOCK_SIZE = 128;
+    static final int LANES = 4;
+    // the words of a block of values of 31 bits, the most a non negative int has.
+    static final int MAX_WORDS = 31 * LANES;
+
+    private static final BitUnpacker UNPACKER = loadUnpacker();
+
+    private BitPacking() {
+    }
+
+    /**
+     * Unpacks the words of a block.
+     */
+    interface BitUnpacker {
+        /**
+         * @param words  the packed words of the block, {@code bits * LANES} of them.
+         * @param bits   the bits of each value, 0 to 31.
+         * @param values the array for the {@link #BLOCK_SIZE} values.
+         */
+        void unpack(int[] words, int bits, int[] values);
+    }
+
+    /**
+     * @param values the {@link #BLOCK_SIZE} non negative values of a block.
+     * @return the bits of the greatest value.
+     */
+    static int bitsRequired(int[] values) {
+        int or = 0;
+        for (int k = 0; k < BLOCK_SIZE; k++) {
+            or |= values[k];
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(or);
+    }
+
+    /**
+     * @param values the {@link #BLOCK_SIZE} non negative values of a block.
+     * @param bits   the bits of each value, at least {@link #bitsRequired(int[])}.
+     * @param words  the array for the {@code bits * LANES} packed words.
+     */
+    static void pack(int[] values, int bits, int[] words) {
+        Arrays.fill(words, 0, bits * LANES, 0);
+        if (bits == 0) {
+            return;
+        }
+
+        for (int lane = 0; lane < LANES; lane++) {
+            int word = 0;
+            int shift = 0;
+            for (int row = 0; row < BLOCK_SIZE / LANES; row++) {
+                int value = values[row * LANES + lane];
+                words[word * LANES + lane] |= value << shift;
+                shift += bits;
+                if (shift >= 32) {
+                    shift -= 32;
+                    word++;
+                    if (shift > 0) {
+                        // the high bits of the value go to the next word of the lane.
+                        words[word * LANES + lane] |= value >>> (bits - shift);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param words  the packed words of a block.
+     * @param bits   the bits of each value.
+     * @param values the array for the {@link #BLOCK_SIZE} values.
+     */
+    static void unpack(int[] words, int bits, int[] values) {
+        if (bits == 0) {
+            Arrays.fill(values, 0, BLOCK_SIZE, 0);
+            return;
+        }
+
+        UNPACKER.unpack(words, bits, values);
+    }
+
+    /**
+     * @return true if the blocks are unpacked with the vector API.
+     */
+    static boolean isVectorized() {
+        return !(UNPACKER instanceof ScalarBitUnpacker);
+    }
+
+    /**
+     * @return the vector unpacker if there is one, the scalar unpacker otherwise.
+     */
+    private static BitUnpacker loadUnpacker() {
+        BitUnpacker vectorUnpacker = vectorUnpacker();
+        return vectorUnpacker != null ? vectorUnpacker : new ScalarBitUnpacker();
+    }
+
+    /**
+     * @return the vector unpacker if the class was compiled and the runtime has the jdk.incubator.vector module,
+     * null otherwise. The vector API is an incubator module, it is only there when the JVM is started
+     * with --add-modules jdk.incubator.vector, so it is looked up by reflection.
+     */
+    static BitUnpacker vectorUnpacker() {
+        try {
+            Class<?> vectorUnpacker = Class.forName("com.p4ybill.engine.index.VectorBitUnpacker");
+            return (BitUnpacker) vectorUnpacker.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Unpacks a block one lane at a time.
+     */
+    static final class ScalarBitUnpacker implements BitUnpacker {
+        @Override
+        public void unpack(int[] words, int bits, int[] values) {
+            int mask = (1 << bits) - 1;
+            for (int lane = 0; lane < LANES; lane++) {
+                int word = 0;
+                int shift = 0;
+                for (int row = 0; row < BLOCK_SIZE / LANES; row++) {
+                    int value = words[word * LANES + lane] >>> shift;
+                    shift += bits;
+                    if (shift >= 32) {
+                        shift -= 32;
+                        word++;
+                        if (shift > 0) {
+                            value |= words[word * LANES + lane] << (bits - shift);
+                        }
+                    }
+                    values[row * LANES + lane] = value & mask;
+                }
+            }
+        }
+    }
+}
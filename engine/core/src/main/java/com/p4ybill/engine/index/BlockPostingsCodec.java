@@ -0,0 +1,185 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.utils.VariableByteEncoding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The {@link PostingsFormat#VBYTE_BLOCKS} and {@link PostingsFormat#PACKED_BLOCKS} codec.
+ * The postings are split in blocks of {@link #BLOCK_SIZE} postings
+ * and a posting list is encoded in variable bytes as
+ * <ol>
+ *     <li>the number of postings,</li>
+ *     <li>with quantized impacts, the scale of the list as a float,</li>
+ *     <li>if there is more than one block, a skip entry per block, with the gap of its last document identifier
+ *     from the last one of the block before, the length of the block in bytes and the greatest weight of its postings
+ *     as a float,</li>
+ *     <li>the blocks, each with the gaps of its document identifiers starting from the last one of the block before,
+ *     the term frequencies and, with quantized impacts, the quantized weights in 1 or 2 bytes.</li>
+ * </ol>
+ * In the packed format the gaps and the term frequencies less one of a full block are not in variable bytes but
+ * bit packed by {@link BitPacking}, each after a byte with their bits, so a block is decoded with a few shifts and
+ * masks per value instead of a branch per byte. The last block of a list is rarely full, it stays in variable bytes.
+ * The positions are encoded apart, for the positions file, like in the {@link PostingsFormat#VBYTE_SPLIT} format.
+ *
+ * The skip entries are read before the postings, so a {@link BlockPostingsCursor} only decodes the blocks that
+ * can hold the documents it is advanced to. The greatest weight of a block is rounded up to a float, so it is never
+ * less than the weight of a posting of the block. Most terms are in a few documents, so the lists of a single block
+ * have no skip entry, it would be longer than the postings.
+ */
+final class BlockPostingsCodec implements PostingsCodec {
+    // a full block is bit packed whole.
+    static final int BLOCK_SIZE = BitPacking.BLOCK_SIZE;
+
+    private final boolean packed;
+    // null if the weights are computed from the norms.
+    private final ImpactQuantizer quantizer;
+
+    /**
+     * @param packed true if the full blocks are bit packed.
+     */
+    BlockPostingsCodec(boolean packed) {
+        this(packed, null);
+    }
+
+    private BlockPostingsCodec(boolean packed, ImpactQuantizer quantizer) {
+        this.packed = packed;
+        this.quantizer = quantizer;
+    }
+
+    @Override
+    public byte[] encode(TermPostings postings) throws IOException {
+        int size = postings.size();
+        int[] docIds = postings.docIds();
+        int[] termFrequencies = postings.termFrequencies();
+        int impactBytes = this.quantizer != null ? this.quantizer.getBytes() : 0;
+
+        float scale = 0;
+        if (this.quantizer != null) {
+            double maxWeight = 0;
+            for (int i = 0; i < size; i++) {
+                maxWeight = Math.max(maxWeight, postings.getWeight(i));
+            }
+            scale = (float) maxWeight;
+        }
+
+        int blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ByteBuffer skips = ByteBuffer.allocate(blockCount * (2 * VariableByteEncoding.MAX_LENGTH + 4));
+        // each gap and term frequency takes at most MAX_LENGTH bytes, a packed block is never longer than that.
+        // The packed words are in little endian, the rest of the blocks is written a byte at a time.
+        ByteBuffer blocks = ByteBuffer.allocate(size * (2 * VariableByteEncoding.MAX_LENGTH + impactBytes))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        int[] values = this.packed ? new int[BLOCK_SIZE] : null;
+        int[] words = this.packed ? new int[BitPacking.MAX_WORDS] : null;
+        int lastDocId = 0;
+        for (int start = 0; start < size; start += BLOCK_SIZE) {
+            int end = Math.min(size, start + BLOCK_SIZE);
+            int blockStart = blocks.position();
+
+            if (this.packed && end - start == BLOCK_SIZE) {
+                int previousDocId = lastDocId;
+                for (int i = start; i < end; i++) {
+                    values[i - start] = docIds[i] - previousDocId;
+                    previousDocId = docIds[i];
+                }
+                writePacked(values, words, blocks);
+                for (int i = start; i < end; i++) {
+                    values[i - start] = termFrequencies[i] - 1;
+                }
+                writePacked(values, words, blocks);
+            } else {
+                VariableByteEncoding.encodeDeltas(docIds, start, end - start, lastDocId, blocks);
+                VariableByteEncoding.encode(termFrequencies, start, end - start, blocks);
+            }
+            double maxWeight = 0;
+            for (int i = start; i < end; i++) {
+                double weight = postings.getWeight(i);
+                if (this.quantizer != null) {
+                    int level = this.quantizer.quantize(weight, scale);
+                    VBytePostingsCodec.writeBytes(level, impactBytes, blocks);
+                    // the weight that is read back.
+                    weight = this.quantizer.dequantize(level, scale);
+                }
+                maxWeight = Math.max(maxWeight, weight);
+            }
+
+            VariableByteEncoding.encode(docIds[end - 1] - lastDocId, skips);
+            VariableByteEncoding.encode(blocks.position() - blockStart, skips);
+            VBytePostingsCodec.writeBytes(Float.floatToIntBits(roundUp(maxWeight)), 4, skips);
+            lastDocId = docIds[end - 1];
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(VariableByteEncoding.MAX_LENGTH + 4 + skips.position()
+                + blocks.position());
+        VariableByteEncoding.encode(size, buf);
+        if (this.quantizer != null) {
+            VBytePostingsCodec.writeBytes(Float.floatToIntBits(scale), 4, buf);
+        }
+        if (size > BLOCK_SIZE) {
+            buf.put(skips.array(), 0, skips.position());
+        }
+        buf.put(blocks.array(), 0, blocks.position());
+
+        return VBytePostingsCodec.toBytes(buf);
+    }
+
+    /**
+     * Writes the bits of the values of a full block in a byte and their packed words in little endian.
+     */
+    private static void writePacked(int[] values, int[] words, ByteBuffer buf) {
+        int bits = BitPacking.bitsRequired(values);
+        BitPacking.pack(values, bits, words);
+        buf.put((byte) bits);
+        for (int w = 0; w < bits * BitPacking.LANES; w++) {
+            buf.putInt(words[w]);
+        }
+    }
+
+    private static float roundUp(double weight) {
+        float f = (float) weight;
+        return f < weight ? Math.nextUp(f) : f;
+    }
+
+    @Override
+    public TermPostings decode(ByteBuffer bytes, ByteBuffer positions, DocNorms norms) {
+        BlockPostingsCursor cursor = this.cursor(bytes, norms);
+        int size = cursor.cost();
+
+        int[] docIds = new int[size];
+        int[] termFrequencies = new int[size];
+        double[] weights = new double[size];
+        int positionCount = 0;
+        for (int i = 0; cursor.nextDoc() != PostingsCursor.NO_MORE_DOCS; i++) {
+            docIds[i] = cursor.docId();
+            termFrequencies[i] = cursor.termFrequency();
+            weights[i] = cursor.weight();
+            positionCount += termFrequencies[i];
+        }
+
+        int[] termPositions = positions != null
+                ? VBytePostingsCodec.readPositions(positions, termFrequencies, positionCount) : null;
+        return new TermPostings(size, docIds, termFrequencies, weights, termPositions);
+    }
+
+    @Override
+    public BlockPostingsCursor cursor(ByteBuffer bytes, DocNorms norms) {
+        return new BlockPostingsCursor(bytes, this.packed, this.quantizer, norms);
+    }
+
+    @Override
+    public PostingsCodec withImpacts(ImpactQuantizer quantizer) {
+        return new BlockPostingsCodec(this.packed, quantizer);
+    }
+
+    @Override
+    public boolean hasSeparatePositions() {
+        return true;
+    }
+
+    @Override
+    public byte[] encodePositions(TermPostings postings) throws IOException {
+        return VBytePostingsCodec.encodeSeparatePositions(postings);
+    }
+}
@@ -0,0 +1,247 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.utils.VariableByteEncoding;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A cursor over a posting list of the {@link BlockPostingsCodec}. The skip entries are read when the cursor is created
+ * and a block is decoded only when the cursor moves into it, so advancing over many postings costs a binary search
+ * on the last document identifiers of the blocks. A list of a single block has no skip entries, it is decoded when
+ * the cursor is created. The bit packed blocks are unpacked by {@link BitPacking}.
+ */
+final class BlockPostingsCursor implements PostingsCursor {
+    private static final int BLOCK_SIZE = BlockPostingsCodec.BLOCK_SIZE;
+
+    private final ByteBuffer bytes;
+    private final boolean packed;
+    // null if the weights are computed from the norms.
+    private final ImpactQuantizer quantizer;
+    private final float scale;
+    private final DocNorms norms;
+    private final int size;
+    private final int blocks;
+    private final int[] blockLastDocIds;
+    // the offset of each block in the buffer.
+    private final int[] blockOffsets;
+    private final double[] blockMaxWeights;
+    private final double maxWeight;
+
+    // the decoded block.
+    private final int[] docIds;
+    private final int[] termFrequencies;
+    private final int[] levels;
+    // the packed words of the gaps or the term frequencies of a block.
+    private final int[] words;
+    private int block;
+    private int blockSize;
+    private int i;
+    private int docId;
+    private int shallowBlock;
+
+    /**
+     * @param bytes     the bytes of the posting list, from the position to the limit of the buffer.
+     *                  The buffer is read by the cursor only.
+     * @param packed    true if the full blocks are bit packed.
+     * @param quantizer the quantizer of the weights, null if the weights are computed from the norms.
+     * @param norms     the norms of the documents of the segment.
+     */
+    BlockPostingsCursor(ByteBuffer bytes, boolean packed, ImpactQuantizer quantizer, DocNorms norms) {
+        // the packed words are in little endian, the rest of the list is read a byte at a time.
+        this.bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+        this.packed = packed;
+        this.quantizer = quantizer;
+        this.norms = norms;
+        this.size = VariableByteEncoding.decode(bytes);
+        this.scale = quantizer != null ? Float.intBitsToFloat(VBytePostingsCodec.readBytes(4, bytes)) : 0;
+
+        this.blocks = (this.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.blockLastDocIds = new int[this.blocks];
+        this.blockOffsets = new int[this.blocks];
+        this.blockMaxWeights = new double[this.blocks];
+        this.docIds = new int[Math.min(this.size, BLOCK_SIZE)];
+        this.termFrequencies = new int[this.docIds.length];
+        this.levels = quantizer != null ? new int[this.docIds.length] : null;
+        this.words = packed && this.size >= BLOCK_SIZE ? new int[BitPacking.MAX_WORDS] : null;
+        this.block = -1;
+        this.i = -1;
+        this.docId = -1;
+
+        if (this.blocks == 1) {
+            // a list without skip entries, its only block is decoded for its last identifier and its greatest weight.
+            this.blockOffsets[0] = bytes.position();
+            this.decodeBlock(0);
+            this.blockLastDocIds[0] = this.docIds[this.size - 1];
+            double maxWeight = 0;
+            for (this.i = 0; this.i < this.size; this.i++) {
+                this.docId = this.docIds[this.i];
+                maxWeight = Math.max(maxWeight, this.weight());
+            }
+            this.blockMaxWeights[0] = maxWeight;
+            this.i = -1;
+            this.docId = -1;
+        } else {
+            int lastDocId = 0;
+            int offset = 0;
+            for (int b = 0; b < this.blocks; b++) {
+                lastDocId += VariableByteEncoding.decode(bytes);
+                this.blockLastDocIds[b] = lastDocId;
+                this.blockOffsets[b] = offset;
+                offset += VariableByteEncoding.decode(bytes);
+                this.blockMaxWeights[b] = Float.intBitsToFloat(VBytePostingsCodec.readBytes(4, bytes));
+            }
+            // the blocks start after the skip entries.
+            for (int b = 0; b < this.blocks; b++) {
+                this.blockOffsets[b] += bytes.position();
+            }
+        }
+
+        double maxWeight = 0;
+        for (double blockMaxWeight : this.blockMaxWeights) {
+            maxWeight = Math.max(maxWeight, blockMaxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    @Override
+    public int docId() {
+        return this.docId;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (this.i + 1 < this.blockSize) {
+            return this.docId = this.docIds[++this.i];
+        }
+        if (this.docId != NO_MORE_DOCS && this.block + 1 < this.blocks) {
+            this.decodeBlock(this.block + 1);
+            return this.docId = this.docIds[++this.i];
+        }
+
+        return this.docId = NO_MORE_DOCS;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (target <= this.docId) {
+            return this.docId;
+        }
+
+        int b = this.findBlock(target, Math.max(this.block, 0));
+        if (b == -1) {
+            this.i = this.blockSize;
+            return this.docId = NO_MORE_DOCS;
+        }
+        if (b != this.block) {
+            this.decodeBlock(b);
+        }
+        // the last posting of the block is not less than the target.
+        int k = this.i + 1;
+        while (this.docIds[k] < target) {
+            k++;
+        }
+        this.i = k;
+
+        return this.docId = this.docIds[k];
+    }
+
+    @Override
+    public double weight() {
+        if (this.quantizer != null) {
+            return this.quantizer.dequantize(this.levels[this.i], this.scale);
+        }
+
+        return PositionalIndex.weight(this.termFrequencies[this.i], this.norms == null ? 1 : this.norms.get(this.docId));
+    }
+
+    /**
+     * @return the term frequency in the document of the current posting.
+     */
+    int termFrequency() {
+        return this.termFrequencies[this.i];
+    }
+
+    @Override
+    public int cost() {
+        return this.size;
+    }
+
+    @Override
+    public double maxWeight() {
+        return this.maxWeight;
+    }
+
+    @Override
+    public int advanceShallow(int target) {
+        int b = this.findBlock(target, Math.max(this.shallowBlock, Math.max(this.block, 0)));
+        this.shallowBlock = b == -1 ? this.blocks : b;
+
+        return b == -1 ? NO_MORE_DOCS : this.blockLastDocIds[b];
+    }
+
+    @Override
+    public double blockMaxWeight() {
+        return this.shallowBlock < this.blocks ? this.blockMaxWeights[this.shallowBlock] : 0;
+    }
+
+    /**
+     * @return the first block from the given one whose last document identifier is not less than the target,
+     * -1 if there is none.
+     */
+    private int findBlock(int target, int from) {
+        int low = from;
+        int high = this.blocks - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.blockLastDocIds[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return low < this.blocks ? low : -1;
+    }
+
+    private void decodeBlock(int b) {
+        this.bytes.position(this.blockOffsets[b]);
+        int n = Math.min(BLOCK_SIZE, this.size - b * BLOCK_SIZE);
+
+        int docId = b == 0 ? 0 : this.blockLastDocIds[b - 1];
+        if (this.packed && n == BLOCK_SIZE) {
+            this.readPacked(this.docIds);
+            for (int k = 0; k < n; k++) {
+                docId += this.docIds[k];
+                this.docIds[k] = docId;
+            }
+            this.readPacked(this.termFrequencies);
+            for (int k = 0; k < n; k++) {
+                this.termFrequencies[k]++;
+            }
+        } else {
+            VariableByteEncoding.decodeDeltas(this.bytes, docId, this.docIds, 0, n);
+            VariableByteEncoding.decode(this.bytes, this.termFrequencies, 0, n);
+        }
+        if (this.quantizer != null) {
+            for (int k = 0; k < n; k++) {
+                this.levels[k] = VBytePostingsCodec.readBytes(this.quantizer.getBytes(), this.bytes);
+            }
+        }
+
+        this.block = b;
+        this.blockSize = n;
+        this.i = -1;
+    }
+
+    /**
+     * Reads the bits and the packed words of a full block and unpacks them to the values.
+     */
+    private void readPacked(int[] values) {
+        int bits = this.bytes.get() & 0xFF;
+        for (int w = 0; w < bits * BitPacking.LANES; w++) {
+            this.words[w] = this.bytes.getInt();
+        }
+        BitPacking.unpack(this.words, bits, values);
+    }
+}
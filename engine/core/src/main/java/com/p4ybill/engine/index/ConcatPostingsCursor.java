@@ -0,0 +1,99 @@
+package com.p4ybill.engine.index;
+
+import java.util.List;
+
+/**
+ * A cursor over the posting lists of a term in the segments of an index, one after the other. The segments are
+ * in the order of their document identifiers, so the postings stay sorted by document identifier.
+ */
+final class ConcatPostingsCursor implements PostingsCursor {
+    private final PostingsCursor[] cursors;
+    private final int cost;
+    private final double maxWeight;
+    // the cursor of the current posting.
+    private int current;
+    // the cursor of the block of the last shallow advance.
+    private int shallow;
+    private int docId;
+
+    /**
+     * @param cursors the cursors of the term in the segments that have it, in the order of the segments.
+     */
+    ConcatPostingsCursor(List<PostingsCursor> cursors) {
+        this.cursors = cursors.toArray(new PostingsCursor[0]);
+        int cost = 0;
+        double maxWeight = 0;
+        for (PostingsCursor cursor : this.cursors) {
+            cost += cursor.cost();
+            maxWeight = Math.max(maxWeight, cursor.maxWeight());
+        }
+        this.cost = cost;
+        this.maxWeight = maxWeight;
+        this.docId = -1;
+    }
+
+    @Override
+    public int docId() {
+        return this.docId;
+    }
+
+    @Override
+    public int nextDoc() {
+        for (; this.current < this.cursors.length; this.current++) {
+            int docId = this.cursors[this.current].nextDoc();
+            if (docId != NO_MORE_DOCS) {
+                return this.docId = docId;
+            }
+        }
+
+        return this.docId = NO_MORE_DOCS;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (target <= this.docId) {
+            return this.docId;
+        }
+
+        for (; this.current < this.cursors.length; this.current++) {
+            int docId = this.cursors[this.current].advance(target);
+            if (docId != NO_MORE_DOCS) {
+                return this.docId = docId;
+            }
+        }
+
+        return this.docId = NO_MORE_DOCS;
+    }
+
+    @Override
+    public double weight() {
+        return this.cursors[this.current].weight();
+    }
+
+    @Override
+    public int cost() {
+        return this.cost;
+    }
+
+    @Override
+    public double maxWeight() {
+        return this.maxWeight;
+    }
+
+    @Override
+    public int advanceShallow(int target) {
+        for (this.shallow = Math.max(this.shallow, this.current); this.shallow < this.cursors.length; this.shallow++) {
+            int lastDocId = this.cursors[this.shallow].advanceShallow(target);
+            if (lastDocId != NO_MORE_DOCS) {
+                return lastDocId;
+            }
+        }
+
+        return NO_MORE_DOCS;
+    }
+
+    @Override
+    public double blockMaxWeight() {
+        return this.shallow < this.cursors.length ? this.cursors[this.shallow].blockMaxWeight() : 0;
+    }
+}
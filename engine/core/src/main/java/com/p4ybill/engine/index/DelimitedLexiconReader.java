@@ -0,0 +1,43 @@
+package com.p4ybill.engine.index;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Reads the lexicon of the segments that were written before the lexicon was front coded, where the terms follow
+ * each other with a delimiter after each one.
+ */
+final class DelimitedLexiconReader implements LexiconReader {
+    static final char LEXICON_TERM_DELIMITER = '|';
+
+    private final BufferedReader lexicon;
+
+    /**
+     * @param lexiconFilePath the lexicon file.
+     * @throws IOException
+     */
+    DelimitedLexiconReader(String lexiconFilePath) throws IOException {
+        // same charset as the FileWriter the lexicon was written with.
+        this.lexicon = new BufferedReader(new FileReader(lexiconFilePath));
+    }
+
+    @Override
+    public String next() throws IOException {
+        StringBuilder term = new StringBuilder();
+        int c;
+        while ((c = this.lexicon.read()) != LEXICON_TERM_DELIMITER) {
+            if (c == -1) {
+                return null;
+            }
+            term.append((char) c);
+        }
+
+        return term.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.lexicon.close();
+    }
+}
@@ -0,0 +1,111 @@
+package com.p4ybill.engine.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The norms of the documents of a segment, which are the lengths of their term frequency vectors.
+ * The identifiers of the documents of a segment are consecutive, so the norms are kept in an array
+ * indexed by the identifier, starting from the first one.
+ */
+final class DocNorms {
+    private final int firstDocId;
+    private final double[] norms;
+
+    /**
+     * @param firstDocId the identifier of the document of the first norm.
+     * @param norms      the norms of the documents with consecutive identifiers.
+     */
+    DocNorms(int firstDocId, double[] norms) {
+        this.firstDocId = firstDocId;
+        this.norms = norms;
+    }
+
+    /**
+     * @param docNorms the norm of each document identifier.
+     * @return the norms of the documents, with 0 for the identifiers in between that have no norm.
+     */
+    static DocNorms of(Map<Integer, Double> docNorms) {
+        if (docNorms.isEmpty()) {
+            return new DocNorms(1, new double[0]);
+        }
+
+        int minDocId = Integer.MAX_VALUE;
+        int maxDocId = Integer.MIN_VALUE;
+        for (int docId : docNorms.keySet()) {
+            minDocId = Math.min(minDocId, docId);
+            maxDocId = Math.max(maxDocId, docId);
+        }
+
+        double[] norms = new double[maxDocId - minDocId + 1];
+        for (Map.Entry<Integer, Double> docNorm : docNorms.entrySet()) {
+            norms[docNorm.getKey() - minDocId] = docNorm.getValue();
+        }
+
+        return new DocNorms(minDocId, norms);
+    }
+
+    /**
+     * @param filePath the file that was written by {@link #save(String)}.
+     * @return the norms of the file.
+     * @throws IOException
+     */
+    static DocNorms load(String filePath) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            int firstDocId = dis.readInt();
+            double[] norms = new double[dis.readInt()];
+            for (int i = 0; i < norms.length; i++) {
+                norms[i] = dis.readDouble();
+            }
+
+            return new DocNorms(firstDocId, norms);
+        }
+    }
+
+    /**
+     * Writes the identifier of the first document, the number of norms and the norms.
+     *
+     * @param filePath the file to write.
+     * @throws IOException
+     */
+    void save(String filePath) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filePath, false)))) {
+            dos.writeInt(this.firstDocId);
+            dos.writeInt(this.norms.length);
+            for (double norm : this.norms) {
+                dos.writeDouble(norm);
+            }
+        }
+    }
+
+    /**
+     * @param docId identifier of a document.
+     * @return the norm of the document, 1 if the document has no norm, like {@link PositionalIndex#getNorm(int)}.
+     */
+    double get(int docId) {
+        int i = docId - this.firstDocId;
+        if (i < 0 || i >= this.norms.length || this.norms[i] == 0) {
+            return 1;
+        }
+
+        return this.norms[i];
+    }
+
+    int getFirstDocId() {
+        return this.firstDocId;
+    }
+
+    /**
+     * @return the number of consecutive identifiers that have a norm.
+     */
+    int size() {
+        return this.norms.length;
+    }
+}
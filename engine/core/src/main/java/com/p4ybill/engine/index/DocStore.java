@@ -0,0 +1,313 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.store.DocFileMapperPB;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The file names of the documents of a segment in its mapper file, laid out so that the file name of a document
+ * is found from its identifier in constant time. The file has
+ * <ol>
+ *     <li>a header with a magic number, the version of the format, the first document identifier, the number of
+ *     identifiers from it and the length of the prefix,</li>
+ *     <li>the directory prefix that all the paths share, in UTF-8,</li>
+ *     <li>a table with the offset of the rest of the path of each identifier in 8 bytes, and the end of the last one,</li>
+ *     <li>the rest of the paths in UTF-8, one after the other.</li>
+ * </ol>
+ * The file is mapped in memory, so a lookup reads two entries of the table and the bytes of one path.
+ * The identifiers that have no document, like the ones of the files that could not be read, have an empty path.
+ *
+ * The mapper files that were written before the doc store are delimited Doc messages. The first byte of the magic
+ * number is 0, which would be the length of an empty Doc message, and those files have none.
+ */
+final class DocStore implements Closeable {
+    // "\0P4D"
+    static final int MAGIC = 0x00503444;
+    static final int VERSION = 1;
+    // the magic number, the version, the first identifier, the number of identifiers and the length of the prefix.
+    static final int HEADER_LENGTH = 5 * 4;
+
+    private final MappedIndexFile file;
+    private final int firstDocId;
+    private final int numberOfDocIds;
+    private final String prefix;
+    private final long tableStart;
+    private final long pathsStart;
+
+    private DocStore(MappedIndexFile file, int firstDocId, int numberOfDocIds, String prefix, long tableStart) {
+        this.file = file;
+        this.firstDocId = firstDocId;
+        this.numberOfDocIds = numberOfDocIds;
+        this.prefix = prefix;
+        this.tableStart = tableStart;
+        this.pathsStart = tableStart + 8L * (numberOfDocIds + 1);
+    }
+
+    /**
+     * @param filePath the mapper file of a segment.
+     * @return the mapped doc store, null if the file was written before the doc store.
+     * @throws IOException if the file was written by a newer version of the format.
+     */
+    static DocStore open(String filePath) throws IOException {
+        MappedIndexFile file = MappedIndexFile.map(filePath);
+        if (file.length() < HEADER_LENGTH) {
+            file.close();
+            return null;
+        }
+
+        ByteBuffer header = file.slice(0, HEADER_LENGTH);
+        if (header.getInt() != MAGIC) {
+            file.close();
+            return null;
+        }
+        int version = header.getInt();
+        if (version > VERSION) {
+            file.close();
+            throw new IOException("The doc store format version " + version + " is newer than the supported version "
+                    + VERSION);
+        }
+        int firstDocId = header.getInt();
+        int numberOfDocIds = header.getInt();
+        int prefixLength = header.getInt();
+
+        String prefix = StandardCharsets.UTF_8.decode(file.slice(HEADER_LENGTH, prefixLength)).toString();
+        return new DocStore(file, firstDocId, numberOfDocIds, prefix, HEADER_LENGTH + prefixLength);
+    }
+
+    /**
+     * @param filePath the mapper file to write, it is replaced.
+     * @param docs     the documents of the segment, in any order.
+     * @throws IOException
+     */
+    static void write(String filePath, List<DocFileMapperPB.DocFileMapper.Doc> docs) throws IOException {
+        List<DocFileMapperPB.DocFileMapper.Doc> sortedDocs = new ArrayList<>(docs);
+        sortedDocs.sort(Comparator.comparingInt(DocFileMapperPB.DocFileMapper.Doc::getDocId));
+
+        write(filePath, consumer -> {
+            int lastDocId = -1;
+            for (DocFileMapperPB.DocFileMapper.Doc doc : sortedDocs) {
+                // a document that was added twice keeps its first file name.
+                if (doc.getDocId() != lastDocId) {
+                    consumer.accept(doc.getFileName(), doc.getDocId());
+                    lastDocId = doc.getDocId();
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the documents in two passes over them, so that they are not kept in memory: the first pass finds
+     * the range of the identifiers and the prefix of the paths, the second one writes the table and the paths.
+     *
+     * @param filePath the mapper file to write, it is replaced.
+     * @param docs     the documents of the segment, in ascending order of identifier.
+     * @throws IOException
+     * @throws IllegalArgumentException if the identifiers of the documents are not ascending.
+     */
+    static void write(String filePath, Docs docs) throws IOException {
+        PathPrefix prefix = new PathPrefix();
+        docs.forEach(prefix);
+
+        byte[] prefixBytes = prefix.get().getBytes(StandardCharsets.UTF_8);
+        long pathsStart = HEADER_LENGTH + prefixBytes.length + 8L * (prefix.numberOfDocIds() + 1);
+        Path path = Paths.get(filePath);
+        // the table and the paths are written at the same time, each through its own channel.
+        try (FileChannel tableChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel pathsChannel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            DataOutputStream table = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(tableChannel)));
+            table.writeInt(MAGIC);
+            table.writeInt(VERSION);
+            table.writeInt(prefix.firstDocId);
+            table.writeInt(prefix.numberOfDocIds());
+            table.writeInt(prefixBytes.length);
+            table.write(prefixBytes);
+
+            pathsChannel.position(pathsStart);
+            TableWriter writer = new TableWriter(table,
+                    new BufferedOutputStream(Channels.newOutputStream(pathsChannel)), prefix);
+            try {
+                docs.forEach(writer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * The documents of a doc store that is written without keeping them in memory.
+     */
+    interface Docs {
+        /**
+         * Passes the file name and the identifier of each document to the consumer, in ascending order
+         * of identifier, the same documents on every call.
+         *
+         * @throws IOException
+         */
+        void forEach(ObjIntConsumer<String> consumer) throws IOException;
+    }
+
+    /**
+     * Finds the range of the identifiers and the longest prefix of all the paths that ends with a separator,
+     * empty if there is none.
+     */
+    private static final class PathPrefix implements ObjIntConsumer<String> {
+        private int firstDocId;
+        private int lastDocId = -1;
+        private String first;
+        private int length;
+
+        @Override
+        public void accept(String fileName, int docId) {
+            if (this.first == null) {
+                this.firstDocId = docId;
+                this.first = fileName;
+                this.length = fileName.length();
+            } else if (docId <= this.lastDocId) {
+                throw new IllegalArgumentException("The document identifier " + docId + " is not after "
+                        + this.lastDocId);
+            }
+            this.lastDocId = docId;
+
+            int max = Math.min(this.length, fileName.length());
+            int k = 0;
+            while (k < max && fileName.charAt(k) == this.first.charAt(k)) {
+                k++;
+            }
+            this.length = k;
+        }
+
+        int numberOfDocIds() {
+            return this.first == null ? 0 : this.lastDocId - this.firstDocId + 1;
+        }
+
+        String get() {
+            if (this.first == null) {
+                return "";
+            }
+
+            int length = this.length;
+            // the prefix ends at a separator, so it never splits a file name, nor a character.
+            while (length > 0 && this.first.charAt(length - 1) != '\\' && this.first.charAt(length - 1) != '/') {
+                length--;
+            }
+
+            return this.first.substring(0, length);
+        }
+    }
+
+    /**
+     * Writes the offset of the path of each identifier to the table and the rest of the path after the prefix
+     * to the paths.
+     */
+    private static final class TableWriter implements ObjIntConsumer<String> {
+        private final DataOutputStream table;
+        private final OutputStream paths;
+        private final int prefixLength;
+        private int nextDocId;
+        private long offset;
+
+        TableWriter(DataOutputStream table, OutputStream paths, PathPrefix prefix) {
+            this.table = table;
+            this.paths = paths;
+            this.prefixLength = prefix.get().length();
+            this.nextDocId = prefix.firstDocId;
+        }
+
+        @Override
+        public void accept(String fileName, int docId) {
+            // the first pass checked the order, but the documents of this pass may not be the same.
+            if (docId < this.nextDocId) {
+                throw new IllegalArgumentException("The document identifier " + docId + " is not after "
+                        + (this.nextDocId - 1));
+            }
+
+            try {
+                // the identifiers without a document have an empty path.
+                while (this.nextDocId <= docId) {
+                    this.table.writeLong(this.offset);
+                    this.nextDocId++;
+                }
+                byte[] bytes = fileName.substring(this.prefixLength).getBytes(StandardCharsets.UTF_8);
+                this.paths.write(bytes);
+                this.offset += bytes.length;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Writes the end of the last path and flushes the table and the paths.
+         */
+        void finish() throws IOException {
+            this.table.writeLong(this.offset);
+            this.table.flush();
+            this.paths.flush();
+        }
+    }
+
+    /**
+     * @param docId the identifier of a document.
+     * @return the file name of the document, null if it is not in this doc store.
+     */
+    String get(int docId) {
+        int i = docId - this.firstDocId;
+        if (i < 0 || i >= this.numberOfDocIds) {
+            return null;
+        }
+
+        ByteBuffer entry = this.file.slice(this.tableStart + 8L * i, 16);
+        long start = entry.getLong();
+        long end = entry.getLong();
+        if (start == end) {
+            return null;
+        }
+
+        return this.prefix + StandardCharsets.UTF_8.decode(this.file.slice(this.pathsStart + start, (int) (end - start)));
+    }
+
+    /**
+     * @return the greatest identifier of the doc store, 0 if it has none.
+     */
+    int lastDocId() {
+        return this.numberOfDocIds == 0 ? 0 : this.firstDocId + this.numberOfDocIds - 1;
+    }
+
+    /**
+     * Passes the file name and the identifier of each document to the consumer, in the order of the identifiers.
+     */
+    void forEach(ObjIntConsumer<String> consumer) {
+        for (int docId = this.firstDocId; docId < this.firstDocId + this.numberOfDocIds; docId++) {
+            String fileName = this.get(docId);
+            if (fileName != null) {
+                consumer.accept(fileName, docId);
+            }
+        }
+    }
+
+    /**
+     * Unmaps the file.
+     */
+    @Override
+    public void close() {
+        this.file.close();
+    }
+}
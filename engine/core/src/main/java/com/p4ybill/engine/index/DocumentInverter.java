@@ -0,0 +1,38 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.parser.TermConsumer;
+import com.p4ybill.engine.utils.IntArrayList;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the positions of each term of a single document, before the document is added to the index
+ * with {@link PositionalIndex#insertDocument(DocumentInverter, int)}.
+ * The terms can be pushed one by one while the document is parsed, so the text of the document
+ * is never held in memory as a whole. Not thread safe, a document is inverted by one thread.
+ */
+final class DocumentInverter implements TermConsumer {
+    private final Map<String, IntArrayList> termPositions;
+
+    DocumentInverter() {
+        this.termPositions = new HashMap<>();
+    }
+
+    @Override
+    public void accept(String term, int position) {
+        IntArrayList positions = this.termPositions.get(term);
+        if (positions == null) {
+            positions = new IntArrayList();
+            this.termPositions.put(term, positions);
+        }
+        positions.add(position);
+    }
+
+    /**
+     * @return map with the distinct terms of the document and their positions.
+     */
+    Map<String, IntArrayList> getTermPositions() {
+        return this.termPositions;
+    }
+}
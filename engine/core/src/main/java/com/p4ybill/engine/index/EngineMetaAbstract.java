@@ -8,7 +8,9 @@ abstract class EngineMetaAbstract<T> {
 
     public enum EngineMeta {
         TOTAL_DOCS_KEY,
-        TOTAL_TERMS_KEY
+        TOTAL_TERMS_KEY,
+        POSTINGS_FORMAT_KEY,
+        IMPACT_BITS_KEY
     }
 
     protected SimpleFileSerializer<Map<EngineMeta, T>> serializer;
@@ -27,6 +27,27 @@ public class EngineMetaData extends EngineMetaAbstract<Integer> implements Flush
         this.metaDataMap.replace(EngineMeta.TOTAL_DOCS_KEY, prevVal);
     }
 
+    /**
+     * @param numberOfDocs the number of documents, for documents that were not added one by one.
+     */
+    public synchronized void setDocsNumber(int numberOfDocs){
+        this.metaDataMap.replace(EngineMeta.TOTAL_DOCS_KEY, numberOfDocs);
+    }
+
+    /**
+     * @param format the format of the posting lists of the segment.
+     */
+    public synchronized void setPostingsFormat(PostingsFormat format){
+        this.metaDataMap.put(EngineMeta.POSTINGS_FORMAT_KEY, format.getId());
+    }
+
+    /**
+     * @param impactBits the bits of the quantized weights of the posting lists of the segment, 0 for none.
+     */
+    public synchronized void setImpactBits(int impactBits){
+        this.metaDataMap.put(EngineMeta.IMPACT_BITS_KEY, impactBits);
+    }
+
     private int getNumberOfDocs(){
         return this.metaDataMap.get(EngineMeta.TOTAL_DOCS_KEY);
     }
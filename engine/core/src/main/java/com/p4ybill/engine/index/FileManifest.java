@@ -0,0 +1,215 @@
+package com.p4ybill.engine.index;
+
+import com.google.protobuf.ByteString;
+import com.p4ybill.engine.store.EngineIndexPB;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * The size, the last modified time and optionally a hash of the content of each indexed file, together with
+ * the identifier of its document. Comparing the files of a directory with the manifest gives the files that were
+ * added, changed or removed since they were indexed, without reading the unchanged files.
+ *
+ * Thread safe.
+ */
+final class FileManifest {
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final Map<String, EngineIndexPB.FileManifestEntry> entries;
+    private final boolean hashContent;
+
+    /**
+     * @param hashContent true to keep a hash of the content of the files, so that a file whose last modified time
+     *                    changed but whose content did not is not indexed again.
+     */
+    FileManifest(boolean hashContent) {
+        this.entries = new ConcurrentHashMap<>();
+        this.hashContent = hashContent;
+    }
+
+    /**
+     * Loads the entries from the file, replacing the entries in memory.
+     *
+     * @param filePath the file that was written by {@link #save(String)}.
+     * @throws IOException
+     */
+    void load(String filePath) throws IOException {
+        this.entries.clear();
+        if (!new File(filePath).exists()) {
+            return;
+        }
+
+        try (InputStream is = new BufferedInputStream(new FileInputStream(filePath))) {
+            EngineIndexPB.FileManifestEntry entry;
+            // until EOF
+            while ((entry = EngineIndexPB.FileManifestEntry.parseDelimitedFrom(is)) != null) {
+                this.entries.put(entry.getPath(), entry);
+            }
+        }
+    }
+
+    /**
+     * Writes the entries to the file. The new file is written aside and moved in place,
+     * so the file is never read half written.
+     *
+     * @param filePath the file to write.
+     * @throws IOException
+     */
+    void save(String filePath) throws IOException {
+        Path manifestFile = Paths.get(filePath);
+        Path newManifestFile = Paths.get(filePath + ".tmp");
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(newManifestFile.toFile()))) {
+            for (EngineIndexPB.FileManifestEntry entry : this.entries.values()) {
+                entry.writeDelimitedTo(os);
+            }
+        }
+
+        Files.move(newManifestFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Creates the entry of a file that is being indexed. The size and the last modified time have to be taken
+     * before the file is read, so that a change while it is read is found the next time.
+     *
+     * @param path         canonical path of the file.
+     * @param docId        identifier of the document of the file.
+     * @param size         size of the file in bytes.
+     * @param lastModified last modified time of the file.
+     * @param content      the content of the file if it was read whole, null otherwise.
+     * @return the entry of the file.
+     * @throws IOException if the content has to be hashed and the file cannot be read.
+     */
+    EngineIndexPB.FileManifestEntry newEntry(String path, int docId, long size, long lastModified, byte[] content)
+            throws IOException {
+        EngineIndexPB.FileManifestEntry.Builder entry = EngineIndexPB.FileManifestEntry.newBuilder()
+                .setPath(path)
+                .setDocId(docId)
+                .setSize(size)
+                .setLastModified(lastModified);
+        if (this.hashContent) {
+            entry.setContentHash(content != null ? hash(content) : hash(path));
+        }
+
+        return entry.build();
+    }
+
+    void put(EngineIndexPB.FileManifestEntry entry) {
+        this.entries.put(entry.getPath(), entry);
+    }
+
+    /**
+     * Adds or replaces the entries of the files of another manifest.
+     */
+    void putAll(FileManifest other) {
+        this.entries.putAll(other.entries);
+    }
+
+    /**
+     * @param path canonical path of the file.
+     * @return the removed entry, null if the file is not in the manifest.
+     */
+    EngineIndexPB.FileManifestEntry remove(String path) {
+        return this.entries.remove(path);
+    }
+
+    EngineIndexPB.FileManifestEntry get(String path) {
+        return this.entries.get(path);
+    }
+
+    /**
+     * @return the entries of all the files, in no particular order.
+     */
+    Collection<EngineIndexPB.FileManifestEntry> entries() {
+        return Collections.unmodifiableCollection(this.entries.values());
+    }
+
+    /**
+     * Compares the files of a directory with the manifest. A file is changed if its size or, when the content is not
+     * hashed, its last modified time is different. The entry of a file whose content is the same is updated with
+     * its new last modified time, so it is not hashed again next time.
+     *
+     * @param files   the files of the directory that should be indexed.
+     * @param dirPath canonical path of the directory. Only the entries under it can be removed.
+     * @return the added, changed and removed files.
+     * @throws IOException
+     */
+    IndexChanges compare(List<File> files, String dirPath) throws IOException {
+        List<File> added = new ArrayList<>();
+        List<File> changed = new ArrayList<>();
+        Set<String> found = new HashSet<>();
+        for (File file : files) {
+            String path = file.getCanonicalPath();
+            found.add(path);
+            EngineIndexPB.FileManifestEntry entry = this.entries.get(path);
+            if (entry == null) {
+                added.add(file);
+            } else if (this.hasChanged(entry, file)) {
+                changed.add(file);
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        String dirPrefix = dirPath + File.separator;
+        for (String path : this.entries.keySet()) {
+            if (path.startsWith(dirPrefix) && !found.contains(path)) {
+                removed.add(path);
+            }
+        }
+
+        return new IndexChanges(added, changed, removed);
+    }
+
+    private boolean hasChanged(EngineIndexPB.FileManifestEntry entry, File file) throws IOException {
+        long lastModified = file.lastModified();
+        if (file.length() != entry.getSize()) {
+            return true;
+        }
+        if (lastModified == entry.getLastModified()) {
+            return false;
+        }
+        if (!this.hashContent || entry.getContentHash().isEmpty()) {
+            return true;
+        }
+
+        // the file was touched, but its content might be the same.
+        if (!hash(entry.getPath()).equals(entry.getContentHash())) {
+            return true;
+        }
+        this.entries.put(entry.getPath(), entry.toBuilder().setLastModified(lastModified).build());
+        return false;
+    }
+
+    private static ByteString hash(byte[] content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return toByteString(crc.getValue());
+    }
+
+    private static ByteString hash(String path) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        return toByteString(crc.getValue());
+    }
+
+    private static ByteString toByteString(long crc) {
+        return ByteString.copyFrom(ByteBuffer.allocate(Integer.BYTES).putInt((int) crc).array());
+    }
+}
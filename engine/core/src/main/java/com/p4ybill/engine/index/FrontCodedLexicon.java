@@ -0,0 +1,275 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.utils.VariableByteEncoding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A front coded lexicon. The sorted terms are written in blocks of {@link #BLOCK_SIZE} terms, and each term is
+ * written as the number of its first UTF-8 bytes that are the same as in the previous term and the rest of its bytes,
+ * both lengths in variable bytes. The first term of a block is written whole, so a block can be read on its own.
+ *
+ * The first term and the offset of each block are kept in memory, in the lexicon index file. A term is looked up with
+ * a binary search on the first terms and a scan of one block of the lexicon file, and the terms with a prefix
+ * with a scan of the blocks from the one of the prefix.
+ * The i-th term of the lexicon is the term of the i-th record of the lexicon array.
+ *
+ * The lexicon index file starts with a magic number and the version of its format, then the number of blocks,
+ * the offset of each block in 8 bytes with its first term, and the length of the lexicon file. The lexicon indexes
+ * that were written before the version start with the number of blocks, and their offsets are 4 bytes.
+ */
+final class FrontCodedLexicon {
+    static final int BLOCK_SIZE = 16;
+    // "\377P4L", it is negative so it is never the number of blocks of a lexicon index without a version.
+    static final int MAGIC = 0xFF50344C;
+    // the version 1 is the format without a version, with 32 bits offsets.
+    static final int VERSION = 2;
+
+    private final String[] firstTerms;
+    // the offset of each block in the lexicon file, and the length of the file at the end.
+    private final long[] blockOffsets;
+
+    private FrontCodedLexicon(String[] firstTerms, long[] blockOffsets) {
+        this.firstTerms = firstTerms;
+        this.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * @param indexFilePath the lexicon index file that was written by {@link Writer}.
+     * @return the lexicon with the first terms of its blocks in memory.
+     * @throws IOException if the lexicon index was written by a newer version of the format.
+     */
+    static FrontCodedLexicon load(String indexFilePath) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFilePath)))) {
+            int version = 1;
+            int blocks = dis.readInt();
+            if (blocks == MAGIC) {
+                version = dis.readInt();
+                if (version > VERSION) {
+                    throw new IOException("The lexicon index format version " + version
+                            + " is newer than the supported version " + VERSION);
+                }
+                blocks = dis.readInt();
+            }
+
+            String[] firstTerms = new String[blocks];
+            long[] blockOffsets = new long[blocks + 1];
+            for (int b = 0; b < blocks; b++) {
+                blockOffsets[b] = readOffset(dis, version);
+                byte[] term = new byte[dis.readInt()];
+                dis.readFully(term);
+                firstTerms[b] = new String(term, StandardCharsets.UTF_8);
+            }
+            blockOffsets[blocks] = readOffset(dis, version);
+
+            return new FrontCodedLexicon(firstTerms, blockOffsets);
+        }
+    }
+
+    private static long readOffset(DataInputStream dis, int version) throws IOException {
+        return version == 1 ? dis.readInt() : dis.readLong();
+    }
+
+    /**
+     * @param term        the term to look up.
+     * @param lexiconFile the mapped lexicon file.
+     * @return the index of the term in the lexicon, -1 if the term is not in the lexicon.
+     * @throws IOException
+     */
+    int find(String term, MappedIndexFile lexiconFile) throws IOException {
+        int block = this.findBlock(term);
+        if (block == -1) {
+            return -1;
+        }
+
+        TermReader terms = new TermReader(this.readBlock(block, lexiconFile));
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            String blockTerm = terms.next();
+            if (blockTerm == null) {
+                break;
+            }
+            int cmp = blockTerm.compareTo(term);
+            if (cmp == 0) {
+                return block * BLOCK_SIZE + i;
+            } else if (cmp > 0) {
+                break;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param prefix      the prefix of the terms.
+     * @param lexiconFile the mapped lexicon file.
+     * @return the terms of the lexicon that start with the prefix, in ascending order.
+     * @throws IOException
+     */
+    List<String> findWithPrefix(String prefix, MappedIndexFile lexiconFile) throws IOException {
+        List<String> terms = new ArrayList<>();
+        // the terms with the prefix come right after the terms that are smaller than the prefix.
+        int block = Math.max(this.findBlock(prefix), 0);
+        for (; block < this.firstTerms.length; block++) {
+            TermReader blockTerms = new TermReader(this.readBlock(block, lexiconFile));
+            String term;
+            while ((term = blockTerms.next()) != null) {
+                if (term.startsWith(prefix)) {
+                    terms.add(term);
+                } else if (term.compareTo(prefix) > 0) {
+                    return terms;
+                }
+            }
+        }
+
+        return terms;
+    }
+
+    /**
+     * @return the last block whose first term is not greater than the term, -1 if the term is before every block.
+     */
+    private int findBlock(String term) {
+        int i = Arrays.binarySearch(this.firstTerms, term);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    private InputStream readBlock(int block, MappedIndexFile lexiconFile) {
+        return lexiconFile.stream(this.blockOffsets[block],
+                (int) (this.blockOffsets[block + 1] - this.blockOffsets[block]));
+    }
+
+    /**
+     * Reads the terms of a front coded lexicon one after the other, from the start of a block.
+     */
+    static final class TermReader implements LexiconReader {
+        private final InputStream is;
+        private byte[] term;
+
+        /**
+         * @param is the lexicon, at the start of a block.
+         */
+        TermReader(InputStream is) {
+            this.is = is;
+            this.term = new byte[64];
+        }
+
+        @Override
+        public String next() throws IOException {
+            int prefixLength = VariableByteEncoding.decode(this.is);
+            if (prefixLength == -1) {
+                return null;
+            }
+            int suffixLength = VariableByteEncoding.decode(this.is);
+
+            int termLength = prefixLength + suffixLength;
+            if (termLength > this.term.length) {
+                this.term = Arrays.copyOf(this.term, Math.max(termLength, this.term.length * 2));
+            }
+            int rd = 0;
+            while (rd < suffixLength) {
+                int n = this.is.read(this.term, prefixLength + rd, suffixLength - rd);
+                if (n == -1) {
+                    throw new IOException("The lexicon ends in the middle of a term");
+                }
+                rd += n;
+            }
+
+            return new String(this.term, 0, termLength, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.is.close();
+        }
+    }
+
+    /**
+     * Writes the terms in the lexicon file and the first term and the offset of each block in the lexicon index file.
+     * The terms have to be added in ascending order.
+     */
+    static final class Writer implements Closeable {
+        private final OutputStream lexiconOs;
+        private final String indexFilePath;
+        private final List<String> firstTerms;
+        private final List<Long> blockOffsets;
+        private byte[] previousTerm;
+        private int numberOfTerms;
+        private long offset;
+
+        /**
+         * @param lexiconFilePath the lexicon file, it is overwritten.
+         * @param indexFilePath   the lexicon index file, it is overwritten when the writer is closed.
+         * @throws IOException
+         */
+        Writer(String lexiconFilePath, String indexFilePath) throws IOException {
+            this.lexiconOs = new BufferedOutputStream(new FileOutputStream(lexiconFilePath, false));
+            this.indexFilePath = indexFilePath;
+            this.firstTerms = new ArrayList<>();
+            this.blockOffsets = new ArrayList<>();
+            this.previousTerm = new byte[0];
+        }
+
+        /**
+         * @param term the term, after the terms that were already added.
+         * @throws IOException
+         */
+        void add(String term) throws IOException {
+            byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+
+            int prefixLength = 0;
+            if (this.numberOfTerms % BLOCK_SIZE == 0) {
+                this.firstTerms.add(term);
+                this.blockOffsets.add(this.offset);
+            } else {
+                int max = Math.min(bytes.length, this.previousTerm.length);
+                while (prefixLength < max && bytes[prefixLength] == this.previousTerm[prefixLength]) {
+                    prefixLength++;
+                }
+            }
+
+            int vbPrefixLength = VariableByteEncoding.encode(prefixLength, this.lexiconOs);
+            int vbSuffixLength = VariableByteEncoding.encode(bytes.length - prefixLength, this.lexiconOs);
+            this.lexiconOs.write(bytes, prefixLength, bytes.length - prefixLength);
+
+            this.offset += vbPrefixLength + vbSuffixLength + bytes.length - prefixLength;
+            this.previousTerm = bytes;
+            this.numberOfTerms++;
+        }
+
+        /**
+         * Saves the lexicon index and releases the lexicon file.
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            this.lexiconOs.close();
+
+            try (DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(this.indexFilePath, false)))) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(VERSION);
+                dos.writeInt(this.firstTerms.size());
+                for (int b = 0; b < this.firstTerms.size(); b++) {
+                    byte[] term = this.firstTerms.get(b).getBytes(StandardCharsets.UTF_8);
+                    dos.writeLong(this.blockOffsets.get(b));
+                    dos.writeInt(term.length);
+                    dos.write(term);
+                }
+                dos.writeLong(this.offset);
+            }
+        }
+    }
+}
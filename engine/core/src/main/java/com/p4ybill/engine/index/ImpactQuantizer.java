@@ -0,0 +1,75 @@
+package com.p4ybill.engine.index;
+
+/**
+ * Quantizes the weights (impacts) of the postings of a term to 8 or 16 bits. The weights of a posting list are
+ * divided by the greatest weight of the list, its scale, and rounded to one of the levels of the quantizer.
+ * A weight is restored as the scale times the fraction of its level, which is looked up in a table.
+ *
+ * The rounding error of a weight is at most half a level of the scale of its term, so the ranking of
+ * the documents only changes where their scores are that close.
+ */
+final class ImpactQuantizer {
+    private static final ImpactQuantizer BITS_8 = new ImpactQuantizer(8);
+    private static final ImpactQuantizer BITS_16 = new ImpactQuantizer(16);
+
+    private final int bits;
+    private final int maxLevel;
+    // the fraction of the scale of each level.
+    private final double[] dequantizationTable;
+
+    private ImpactQuantizer(int bits) {
+        this.bits = bits;
+        this.maxLevel = (1 << bits) - 1;
+        this.dequantizationTable = new double[this.maxLevel + 1];
+        for (int level = 0; level <= this.maxLevel; level++) {
+            this.dequantizationTable[level] = (double) level / this.maxLevel;
+        }
+    }
+
+    /**
+     * @param bits the bits of a quantized weight, 8 or 16.
+     * @return the quantizer of the bits.
+     */
+    static ImpactQuantizer of(int bits) {
+        if (bits == 8) {
+            return BITS_8;
+        } else if (bits == 16) {
+            return BITS_16;
+        }
+
+        throw new IllegalArgumentException("Impacts are quantized to 8 or 16 bits, not " + bits);
+    }
+
+    /**
+     * @return the bits of a quantized weight.
+     */
+    int getBits() {
+        return this.bits;
+    }
+
+    /**
+     * @return the bytes of a quantized weight.
+     */
+    int getBytes() {
+        return this.bits / 8;
+    }
+
+    /**
+     * @param weight a weight of the posting list.
+     * @param scale  the greatest weight of the posting list.
+     * @return the level of the weight, at least 1 so that no posting loses its weight.
+     */
+    int quantize(double weight, float scale) {
+        int level = (int) Math.round(weight / scale * this.maxLevel);
+        return Math.max(1, Math.min(this.maxLevel, level));
+    }
+
+    /**
+     * @param level the level of a weight.
+     * @param scale the greatest weight of the posting list.
+     * @return the weight of the level.
+     */
+    double dequantize(int level, float scale) {
+        return scale * this.dequantizationTable[level];
+    }
+}
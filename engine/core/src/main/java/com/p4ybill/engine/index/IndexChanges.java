@@ -0,0 +1,42 @@
+package com.p4ybill.engine.index;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The files of a directory that changed since they were indexed, as found by comparing the files
+ * with the manifest of the index.
+ */
+public class IndexChanges {
+    private final List<File> added;
+    private final List<File> changed;
+    private final List<String> removed;
+
+    IndexChanges(List<File> added, List<File> changed, List<String> removed) {
+        this.added = Collections.unmodifiableList(added);
+        this.changed = Collections.unmodifiableList(changed);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * @return the files that were not indexed before.
+     */
+    public List<File> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the indexed files whose content changed.
+     */
+    public List<File> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the canonical paths of the indexed files that do not exist anymore.
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }
+}
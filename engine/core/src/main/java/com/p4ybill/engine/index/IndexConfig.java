@@ -0,0 +1,184 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.utils.EngineUtils;
+
+/**
+ * Options that control how documents are indexed. The defaults are used when no config is given.
+ */
+public class IndexConfig {
+    private IndexingMode indexingMode;
+    private long memoryBudget;
+    private int stemCacheSize;
+    private int readerThreads;
+    private int analyzerThreads;
+    private int inverterThreads;
+    private int queueCapacity;
+    private IngestionMode ingestionMode;
+    private int maxConcurrentReads;
+    private boolean hashFileContent;
+    private PostingsFormat postingsFormat;
+    private int impactBits;
+
+    public IndexConfig() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.indexingMode = IndexingMode.SHARED;
+        this.memoryBudget = 0;
+        this.stemCacheSize = EngineUtils.DEFAULT_STEM_CACHE_SIZE;
+        this.readerThreads = 4;
+        this.analyzerThreads = processors;
+        this.inverterThreads = Math.max(1, processors / 2);
+        this.queueCapacity = 256;
+        this.ingestionMode = IngestionMode.PLATFORM_THREADS;
+        this.maxConcurrentReads = 1000;
+        this.hashFileContent = false;
+        this.postingsFormat = PostingsFormat.VBYTE_BLOCKS;
+        this.impactBits = 0;
+    }
+
+    public IndexingMode getIndexingMode() {
+        return indexingMode;
+    }
+
+    /**
+     * @param indexingMode how the indexing threads share the in-memory postings.
+     */
+    public void setIndexingMode(IndexingMode indexingMode) {
+        this.indexingMode = indexingMode;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * When the in-memory postings exceed the budget, they are spilled to disk as a sorted run
+     * and all the runs are merged when the index is saved.
+     *
+     * @param memoryBudget approximate heap bytes for the in-memory postings. Zero or less means no limit.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int getStemCacheSize() {
+        return stemCacheSize;
+    }
+
+    /**
+     * @param stemCacheSize the maximum number of words in the stem cache that is shared by indexing and querying.
+     *                      Zero or less disables the cache.
+     */
+    public void setStemCacheSize(int stemCacheSize) {
+        this.stemCacheSize = stemCacheSize;
+    }
+
+    public int getReaderThreads() {
+        return readerThreads;
+    }
+
+    /**
+     * @param readerThreads threads of the pipeline stage that reads the files. Few threads suit spinning disks,
+     *                      more threads suit NVMe or network storage.
+     */
+    public void setReaderThreads(int readerThreads) {
+        this.readerThreads = readerThreads;
+    }
+
+    public int getAnalyzerThreads() {
+        return analyzerThreads;
+    }
+
+    /**
+     * @param analyzerThreads threads of the pipeline stage that tokenizes the files.
+     */
+    public void setAnalyzerThreads(int analyzerThreads) {
+        this.analyzerThreads = analyzerThreads;
+    }
+
+    public int getInverterThreads() {
+        return inverterThreads;
+    }
+
+    /**
+     * @param inverterThreads threads of the pipeline stage that adds the tokenized files to the index.
+     */
+    public void setInverterThreads(int inverterThreads) {
+        this.inverterThreads = inverterThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity capacity of each queue between the pipeline stages. A full queue blocks the stage before
+     *                      it, which bounds the memory of the files that are read but not yet indexed.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public IngestionMode getIngestionMode() {
+        return ingestionMode;
+    }
+
+    /**
+     * @param ingestionMode the way the files are read.
+     */
+    public void setIngestionMode(IngestionMode ingestionMode) {
+        this.ingestionMode = ingestionMode;
+    }
+
+    public int getMaxConcurrentReads() {
+        return maxConcurrentReads;
+    }
+
+    /**
+     * @param maxConcurrentReads maximum number of files that are read at the same time
+     *                           in {@link IngestionMode#VIRTUAL_THREADS} mode.
+     */
+    public void setMaxConcurrentReads(int maxConcurrentReads) {
+        this.maxConcurrentReads = maxConcurrentReads;
+    }
+
+    public boolean isHashFileContent() {
+        return hashFileContent;
+    }
+
+    /**
+     * @param hashFileContent true to keep a hash of the content of each indexed file in the manifest, so that
+     *                        a re-index does not index again a file whose last modified time changed but whose
+     *                        content did not. The hash costs an extra read of the files that are streamed.
+     */
+    public void setHashFileContent(boolean hashFileContent) {
+        this.hashFileContent = hashFileContent;
+    }
+
+    public PostingsFormat getPostingsFormat() {
+        return postingsFormat;
+    }
+
+    /**
+     * @param postingsFormat the format of the posting lists of the segments that are written. The segments that
+     *                       were written with another format can still be read.
+     */
+    public void setPostingsFormat(PostingsFormat postingsFormat) {
+        this.postingsFormat = postingsFormat;
+    }
+
+    public int getImpactBits() {
+        return impactBits;
+    }
+
+    /**
+     * @param impactBits 8 or 16 to store the weights of the postings quantized to that many bits, with a scale
+     *                   per term, instead of computing them from the norms of the documents when the postings
+     *                   are read. 0 for the weights in full precision. The protobuf format ignores it.
+     */
+    public void setImpactBits(int impactBits) {
+        if (impactBits != 0) {
+            ImpactQuantizer.of(impactBits);
+        }
+        this.impactBits = impactBits;
+    }
+}
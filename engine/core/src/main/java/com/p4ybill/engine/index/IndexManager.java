@@ -1,19 +1,36 @@
 package com.p4ybill.engine.index;
 
 import com.p4ybill.engine.parser.Parser;
+import com.p4ybill.engine.parser.StemCache;
 import com.p4ybill.engine.parser.Tokenizer;
 import com.p4ybill.engine.queryparser.ScoreDocument;
 import com.p4ybill.engine.store.EngineIndexPB;
 import com.p4ybill.engine.utils.EngineUtils;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 public class IndexManager {
     private File dir;
@@ -22,52 +39,412 @@ public class IndexManager {
     private MapDocid2Files mapperDocFiles;
     private int docId;
     private EngineMetaData engineMeta;
+    private IndexConfig config;
+    // the segments of the index on disk that are searched, the first one is in the index folder itself.
+    private List<IndexSegment> segments;
+    // searches hold the read lock while they read the mapped files of the segments, the segments are only
+    // unmapped or replaced with the write lock, so a file is never read after it is unmapped.
+    private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    private LiveDocs liveDocs;
+    // the indexed files of the loaded index, and the files that were indexed since and are not saved yet.
+    private FileManifest manifest;
+    private FileManifest newFilesManifest;
 
     public IndexManager(File dir) {
+        this(dir, new IndexConfig());
+    }
+
+    /**
+     * @param dir    the directory to index.
+     * @param config options that control the indexing.
+     */
+    public IndexManager(File dir, IndexConfig config) {
         this.dir = dir;
-        this.posIndex = new PositionalIndex();
+        this.config = config;
+        this.posIndex = new PositionalIndex(config.getIndexingMode());
+        this.posIndex.setMemoryBudget(config.getMemoryBudget());
+        this.posIndex.setPostingsFormat(config.getPostingsFormat());
+        this.posIndex.setImpactBits(config.getImpactBits());
         this.mapperDocFiles = new MapDocid2Files();
-        this.parser = new Parser();
+        this.parser = new Parser(config.getStemCacheSize());
         this.engineMeta = new EngineMetaData();
         this.docId = 0;
+        this.segments = new ArrayList<>();
+        this.liveDocs = new LiveDocs();
+        this.manifest = new FileManifest(config.isHashFileContent());
+        this.newFilesManifest = new FileManifest(config.isHashFileContent());
     }
 
     /**
      * Saves all the required files regarding indexing.
+     * The saved documents replace the whole index, including the segments that were added with {@link #saveSegment()}.
      *
      * @throws IOException
      */
     public void save() throws IOException {
+        // the files of the loaded segments are written again.
+        this.closeSegments();
+        this.createIndexedFolder();
+        String indexFolderPath = this.getIndexFolderPath();
+        this.flushMapper(indexFolderPath);
+        this.flushMetaData(indexFolderPath);
+        this.saveIndex(indexFolderPath);
+        this.deleteRunsFolder();
+        this.deleteSegments();
+        // all the documents of a new index are live.
+        new File(this.getLiveDocsFilePath()).delete();
+        this.newFilesManifest.save(this.getManifestFilePath());
+
+        this.resetDocumentsToSave();
+        this.loadSegments();
+    }
+
+    /**
+     * Saves the documents that were added after the index was loaded as a new segment of the index,
+     * without indexing the existing documents again. Searches run across all the segments.
+     * If the folder has not been indexed yet, the documents are saved as the index itself, see {@link #save()}.
+     *
+     * @throws IOException
+     * @throws IllegalStateException if the existing index was not loaded before the documents were added,
+     *                               so their identifiers are not after the ones of the existing documents.
+     */
+    public void saveSegment() throws IOException {
+        if (!this.hasIndexedFiles()) {
+            this.save();
+            return;
+        }
+        if (this.segments.isEmpty()) {
+            throw new IllegalStateException("The index has to be loaded before documents are added to it");
+        }
+
+        List<String> segmentNames = this.readSegmentNames();
+        String segmentName = EngineUtils.SEGMENT_DIRECTORY_PREFIX + this.nextSegmentNumber(segmentNames);
+        String segmentFolderPath = this.getIndexFolderPath() + "\\" + segmentName;
+        new File(segmentFolderPath).mkdirs();
+        this.flushMapper(segmentFolderPath);
+        this.flushMetaData(segmentFolderPath);
+        this.saveIndex(segmentFolderPath);
+        this.deleteRunsFolder();
+
+        // the segment is searched once it is in the segments file.
+        segmentNames.add(segmentName);
+        this.writeSegmentNames(segmentNames);
+        this.manifest.putAll(this.newFilesManifest);
+        this.manifest.save(this.getManifestFilePath());
+
+        this.resetDocumentsToSave();
+        this.loadSegments();
+    }
+
+    /**
+     * Deletes the documents of the specified files from the index. The documents are only marked as deleted,
+     * they are filtered out of the searches and are not counted in the number of documents.
+     * The index has to be loaded first.
+     *
+     * @param files the indexed files to delete. A file does not have to exist anymore.
+     * @return the number of documents that were deleted.
+     * @throws IOException
+     */
+    public int deleteDocuments(Collection<File> files) throws IOException {
+        int deleted = 0;
+        for (int docId : this.findLiveDocIds(files)) {
+            if (this.liveDocs.delete(docId)) {
+                deleted++;
+            }
+        }
+
+        this.liveDocs.save(this.getLiveDocsFilePath());
+        this.removeFromManifest(files);
+        return deleted;
+    }
+
+    /**
+     * Re-indexes the specified files: their current content is saved as a new segment, see {@link #saveSegment()},
+     * and then the documents of their previous content are deleted. Files that do not exist anymore are only deleted.
+     * The index has to be loaded first.
+     *
+     * @param files the files that changed.
+     * @throws IOException
+     */
+    public void updateDocuments(Collection<File> files) throws IOException {
+        List<Integer> previousDocIds = this.findLiveDocIds(files);
+        for (File file : files) {
+            if (file.exists()) {
+                this.addDocument(file);
+            }
+        }
+        this.saveSegment();
+
+        for (int docId : previousDocIds) {
+            this.liveDocs.delete(docId);
+        }
+        this.liveDocs.save(this.getLiveDocsFilePath());
+
+        List<File> removedFiles = new ArrayList<>();
+        for (File file : files) {
+            if (!file.exists()) {
+                removedFiles.add(file);
+            }
+        }
+        this.removeFromManifest(removedFiles);
+    }
+
+    /**
+     * Compares the files under the directory that pass the filter with the manifest of the index, and only indexes
+     * the files that were added or changed since they were indexed, as a new segment, see {@link #saveSegment()}.
+     * The documents of the changed and the removed files are deleted. The unchanged files are not read.
+     * If the folder has not been indexed yet, or it was indexed without a manifest, all the files are indexed.
+     *
+     * @param dirToIndex the directory to walk recursively.
+     * @param filter     accepts the files to be indexed.
+     * @return the files that were added, changed or removed.
+     * @throws IOException
+     */
+    public IndexChanges indexChanges(File dirToIndex, FileFilter filter) throws IOException {
+        List<File> files = new ArrayList<>();
+        try {
+            IndexingPipeline.walk(dirToIndex, filter, files::add);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Listing of " + dirToIndex + " was interrupted");
+        }
+
+        if (!this.hasIndexedFiles() || !new File(this.getManifestFilePath()).exists()) {
+            // a new index, so the identifiers start over even if an index was loaded.
+            this.setDocId(0);
+            new IndexingPipeline(this, this.config).run(files);
+            this.save();
+            return new IndexChanges(files, new ArrayList<>(), new ArrayList<>());
+        }
+
+        this.loadSegments();
+        IndexChanges changes = this.manifest.compare(files, dirToIndex.getCanonicalPath());
+        List<Integer> previousDocIds = new ArrayList<>();
+        for (File file : changes.getChanged()) {
+            previousDocIds.add(this.manifest.get(file.getCanonicalPath()).getDocId());
+        }
+        for (String path : changes.getRemoved()) {
+            previousDocIds.add(this.manifest.remove(path).getDocId());
+        }
+
+        List<File> filesToIndex = new ArrayList<>(changes.getAdded());
+        filesToIndex.addAll(changes.getChanged());
+        if (!filesToIndex.isEmpty()) {
+            new IndexingPipeline(this, this.config).run(filesToIndex);
+            this.saveSegment();
+        }
+
+        for (int docId : previousDocIds) {
+            this.liveDocs.delete(docId);
+        }
+        this.liveDocs.save(this.getLiveDocsFilePath());
+        this.manifest.save(this.getManifestFilePath());
+
+        return changes;
+    }
+
+    /**
+     * Merges the indexes of other directories into the index of this directory, replacing its index if any.
+     * The indexes are read term by term in the order of their lexicons and written as a single segment,
+     * so no index is loaded in memory. The deleted documents are dropped and the live documents get new identifiers,
+     * in the order of the directories. The merged index has a manifest only if all the indexes have one.
+     *
+     * @param indexedDirs directories that have been indexed, other than this directory.
+     * @throws IOException
+     * @throws IllegalArgumentException if a directory has not been indexed or it is this directory.
+     */
+    public void merge(List<File> indexedDirs) throws IOException {
+        List<IndexManager> indexes = new ArrayList<>(indexedDirs.size());
+        for (File indexedDir : indexedDirs) {
+            if (indexedDir.getCanonicalFile().equals(this.dir.getCanonicalFile())) {
+                throw new IllegalArgumentException("The index of " + indexedDir + " cannot be merged into itself");
+            }
+            IndexManager index = new IndexManager(indexedDir, this.config);
+            if (!index.hasIndexedFiles()) {
+                throw new IllegalArgumentException(indexedDir + " has not been indexed");
+            }
+            // the merger reads the segments term by term, their terms are not looked up.
+            index.loadSegments(false);
+            indexes.add(index);
+        }
+
+        this.closeSegments();
         this.createIndexedFolder();
-        this.flushMapper();
-        this.flushMetaData();
-        this.saveIndex();
+        IndexMerger merger = new IndexMerger(indexes, this.config.getPostingsFormat(),
+                this.config.getImpactBits());
+        merger.write(this.getIndexFolderPath());
+        for (IndexManager index : indexes) {
+            index.closeSegments();
+        }
+        this.deleteSegments();
+        // all the documents of the merged index are live.
+        new File(this.getLiveDocsFilePath()).delete();
+        FileManifest mergedManifest = merger.mergeManifests(this.config.isHashFileContent());
+        if (mergedManifest != null) {
+            mergedManifest.save(this.getManifestFilePath());
+        } else {
+            new File(this.getManifestFilePath()).delete();
+        }
+
+        this.resetDocumentsToSave();
+        this.loadSegments();
+    }
+
+    /**
+     * Removes the files from the manifest and saves it.
+     *
+     * @param files indexed files that were deleted.
+     * @throws IOException
+     */
+    private void removeFromManifest(Collection<File> files) throws IOException {
+        for (File file : files) {
+            this.manifest.remove(file.getCanonicalPath());
+        }
+        this.manifest.save(this.getManifestFilePath());
+    }
+
+    /**
+     * @param files indexed files.
+     * @return the identifiers of the live documents of the files in all the segments.
+     * @throws IOException
+     */
+    private List<Integer> findLiveDocIds(Collection<File> files) throws IOException {
+        if (this.segments.isEmpty()) {
+            throw new IllegalStateException("The index has to be loaded before documents are deleted from it");
+        }
+
+        Set<String> fileNames = new HashSet<>();
+        for (File file : files) {
+            fileNames.add(file.getCanonicalPath());
+        }
+
+        List<Integer> docIds = new ArrayList<>();
+        this.segmentsLock.readLock().lock();
+        try {
+            for (IndexSegment segment : this.segments) {
+                for (int docId : segment.getDocIds(fileNames)) {
+                    if (this.liveDocs.isLive(docId)) {
+                        docIds.add(docId);
+                    }
+                }
+            }
+        } finally {
+            this.segmentsLock.readLock().unlock();
+        }
+
+        return docIds;
     }
 
     /**
      * Saves the Positional Index to disk.
      *
+     * @param folderPath the folder of the segment to write.
      * @throws IOException
      */
-    protected void saveIndex() throws IOException {
-        this.posIndex.writeIndex(this.getIndexFolderPath(),
-                true
+    protected void saveIndex(String folderPath) throws IOException {
+        this.posIndex.writeIndex(folderPath,
+                true,
+                this.engineMeta.getValue(EngineMetaAbstract.EngineMeta.TOTAL_DOCS_KEY)
         );
     }
 
     /**
      * Loads/sets the required files for indexing.
+     * Documents that are added afterwards get identifiers after the ones of the loaded documents,
+     * so they can be saved with {@link #saveSegment()}.
      */
     public void load(){
         try {
-            this.engineMeta.setDirToSave(this.getMetadataFilePath());
-            this.mapperDocFiles.setDirToSave(new File(this.getMapperIdFilePath()));
-            this.posIndex.loadLexiconArray(this.getLexiconArrayFilePath());
+            this.loadSegments();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Loads the first segment and the segments of the segments file.
+     *
+     * @throws IOException
+     */
+    private void loadSegments() throws IOException {
+        this.loadSegments(true);
+    }
+
+    /**
+     * Loads the first segment and the segments of the segments file.
+     *
+     * @param termTables false if the index is only read term by term, see {@link IndexSegment#load(boolean)}.
+     * @throws IOException
+     */
+    private void loadSegments(boolean termTables) throws IOException {
+        String indexFolderPath = this.getIndexFolderPath();
+        List<IndexSegment> segments = new ArrayList<>();
+        segments.add(new IndexSegment(indexFolderPath));
+        for (String segmentName : this.readSegmentNames()) {
+            segments.add(new IndexSegment(indexFolderPath + "\\" + segmentName));
+        }
+
+        int maxDocId = 0;
+        for (IndexSegment segment : segments) {
+            segment.load(termTables);
+            maxDocId = Math.max(maxDocId, segment.getMaxDocId());
+        }
+
+        this.liveDocs.load(this.getLiveDocsFilePath());
+        this.manifest.load(this.getManifestFilePath());
+        this.segmentsLock.writeLock().lock();
+        try {
+            this.closeSegments();
+            this.segments = segments;
+        } finally {
+            this.segmentsLock.writeLock().unlock();
+        }
+        // the documents that are added afterwards get identifiers after all the ones in use, which are not always
+        // 1 to the number of documents: a save after a load keeps the identifiers of the added documents.
+        this.setDocId(maxDocId);
+    }
+
+    /**
+     * Unmaps the files of the loaded segments, once the searches that read them are done.
+     * The searches that start afterwards find no segments until they are loaded again.
+     */
+    private void closeSegments() {
+        this.segmentsLock.writeLock().lock();
+        try {
+            for (IndexSegment segment : this.segments) {
+                segment.close();
+            }
+            this.segments = new ArrayList<>();
+        } finally {
+            this.segmentsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a search while the segments cannot be unmapped. The cursors of {@link #getTermsCursors(List)} read
+     * the mapped files of the segments, so they must only be used inside a search.
+     *
+     * @param search the search to run.
+     * @return the result of the search.
+     */
+    public <T> T searchSegments(Supplier<T> search) {
+        this.segmentsLock.readLock().lock();
+        try {
+            return search.get();
+        } finally {
+            this.segmentsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Starts an empty mapper and metadata for the documents that are added after a save.
+     */
+    private void resetDocumentsToSave() {
+        this.mapperDocFiles = new MapDocid2Files();
+        this.engineMeta = new EngineMetaData();
+        this.newFilesManifest = new FileManifest(this.config.isHashFileContent());
+    }
+
     /**
      * @return true if the specified file is already indexed.
      */
@@ -103,44 +480,205 @@ public class IndexManager {
 
     /**
      * @param term string the term to find.
-     * @param postingsChannel FileChannel of the postings file
-     * @param lexiconChannel FileChannel of the lexicon File
-     * @return the posting list of the given term.
+     * @return the posting list of the given term across all the segments with its positions,
+     * null if the term is not in the index.
      */
-    public EngineIndexPB.PostingList getPostingList(String term, FileChannel postingsChannel, FileChannel lexiconChannel) {
-        return this.posIndex.getPostingList(term, postingsChannel, lexiconChannel);
+    public TermPostings getPostingList(String term) {
+        List<TermPostings> termsPostingLists = this.getTermsPostingList(Collections.singletonList(term));
+        return termsPostingLists.isEmpty() ? null : termsPostingLists.get(0);
     }
 
-
     /**
-     * Iterate through a list of terms and uses the {@link #getPostingList(String, FileChannel, FileChannel)}
-     * to retrieve the posting list of each term.
+     * Iterate through a list of terms and retrieves the posting list of each term from every segment.
+     * The posting lists of a term in the segments are merged in one.
      *
      * @param terms A list of terms to look up. Uses
-     * @return A list of posting lists of the given terms
+     * @return A list of posting lists of the given terms with their positions, null for a term that is not
+     * in the index.
      */
-    public List<EngineIndexPB.PostingList> getTermsPostingList(List<String> terms) {
-        List<EngineIndexPB.PostingList> termsPostingLists = new ArrayList<>();
+    public List<TermPostings> getTermsPostingList(List<String> terms) {
+        return this.getTermsPostingList(terms, true);
+    }
 
+    /**
+     * Iterate through a list of terms and retrieves the posting list of each term from every segment.
+     * The posting lists of a term in the segments are merged in one.
+     *
+     * @param terms         A list of terms to look up.
+     * @param withPositions false for the queries that only need the documents and the weights, so that
+     *                      the positions are not read from the segments that keep them apart.
+     *                      The merged posting lists have positions only if they were read from every segment.
+     * @return A list of posting lists of the given terms, null for a term that is not in the index.
+     */
+    public List<TermPostings> getTermsPostingList(List<String> terms, boolean withPositions) {
+        List<TermPostings> termsPostingLists = new ArrayList<>();
+        List<List<TermPostings>> segmentsPostingLists = new ArrayList<>();
+
+        this.segmentsLock.readLock().lock();
         try {
-            FileInputStream inPostings = new FileInputStream(Objects.requireNonNull(this.getPostingsFilePath()));
-            FileInputStream inLexicon = new FileInputStream(Objects.requireNonNull(this.getLexiconFilePath()));
-            FileChannel postingsChannel = inPostings.getChannel();
-            FileChannel lexiconChannel = inLexicon.getChannel();
+            for (IndexSegment segment : this.segments) {
+                segmentsPostingLists.add(segment.getTermsPostingList(terms, withPositions));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return termsPostingLists;
+        } finally {
+            this.segmentsLock.readLock().unlock();
+        }
+
+        for (int i = 0; i < terms.size(); i++) {
+            List<TermPostings> termPostingLists = new ArrayList<>(segmentsPostingLists.size());
+            for (List<TermPostings> segmentPostingLists : segmentsPostingLists) {
+                termPostingLists.add(segmentPostingLists.get(i));
+            }
+            termsPostingLists.add(this.mergePostingLists(termPostingLists));
+        }
 
+        return termsPostingLists;
+    }
+
+    /**
+     * Enumerates the terms of the lexicons of all the segments that start with a prefix. The front coded lexicons
+     * are read from the block of the prefix on, the other lexicons from their start.
+     *
+     * @param prefix the prefix of the terms, after the tokenizer.
+     * @return the terms with the prefix in ascending order, including the terms that are only in deleted documents.
+     * @throws IOException
+     */
+    public List<String> getTermsWithPrefix(String prefix) throws IOException {
+        SortedSet<String> terms = new TreeSet<>();
+        this.segmentsLock.readLock().lock();
+        try {
+            for (IndexSegment segment : this.segments) {
+                terms.addAll(segment.getTermsWithPrefix(prefix));
+            }
+        } finally {
+            this.segmentsLock.readLock().unlock();
+        }
+
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * Gives a cursor over the postings of each term across the segments, which reads only the blocks of the posting
+     * lists that it is moved to, in the formats that have skip entries. If documents are deleted, the cursors skip
+     * their postings, but the cost of a cursor still counts them, see {@link #getDocFrequencies(List)}.
+     * The cursors read the mapped files of the segments, so they are only valid inside
+     * {@link #searchSegments(Supplier)}.
+     *
+     * @param terms the terms to look up.
+     * @return a cursor for each term, in the order of the terms, null for a term that is not in the index.
+     */
+    public List<PostingsCursor> getTermsCursors(List<String> terms) {
+        List<PostingsCursor> cursors = new ArrayList<>(terms.size());
+        BitSet deleted = this.liveDocs.getDeleted();
+
+        this.segmentsLock.readLock().lock();
+        try {
             for (String term : terms) {
-                termsPostingLists.add(this.posIndex.getPostingList(term, postingsChannel, lexiconChannel));
+                PostingsCursor cursor = this.getSegmentsCursor(term);
+                cursors.add(cursor != null && !deleted.isEmpty() ? new LiveDocsPostingsCursor(cursor, deleted) : cursor);
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        } finally {
+            this.segmentsLock.readLock().unlock();
+        }
+
+        return cursors;
+    }
+
+    /**
+     * Gives the number of live documents of each term, for the idf of the scores. The deleted documents are looked up
+     * in the posting lists, with the skip entries of the formats that have them, so the lists are not decoded whole.
+     *
+     * @param terms the terms to look up.
+     * @return the document frequency of each term in the live documents, in the order of the terms, 0 for a term
+     * that is not in the index.
+     */
+    public int[] getDocFrequencies(List<String> terms) {
+        int[] docFrequencies = new int[terms.size()];
+        BitSet deleted = this.liveDocs.getDeleted();
+
+        this.segmentsLock.readLock().lock();
+        try {
+            for (int t = 0; t < terms.size(); t++) {
+                PostingsCursor cursor = this.getSegmentsCursor(terms.get(t));
+                if (cursor == null) {
+                    continue;
+                }
 
-            postingsChannel.close();
-            lexiconChannel.close();
-            inPostings.close();
-            inLexicon.close();
+                int docFrequency = cursor.cost();
+                int docId = deleted.nextSetBit(0);
+                while (docId >= 0) {
+                    int found = cursor.advance(docId);
+                    if (found == PostingsCursor.NO_MORE_DOCS) {
+                        break;
+                    }
+                    if (found == docId) {
+                        docFrequency--;
+                        docId = deleted.nextSetBit(docId + 1);
+                    } else {
+                        docId = deleted.nextSetBit(found);
+                    }
+                }
+                docFrequencies[t] = docFrequency;
+            }
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            this.segmentsLock.readLock().unlock();
         }
 
-        return termsPostingLists;
+        return docFrequencies;
+    }
+
+    /**
+     * @return a cursor over the postings of the term in all the segments, including the deleted documents,
+     * null if the term is in no segment.
+     */
+    private PostingsCursor getSegmentsCursor(String term) throws IOException {
+        List<PostingsCursor> segmentCursors = new ArrayList<>(this.segments.size());
+        for (IndexSegment segment : this.segments) {
+            PostingsCursor cursor = segment.getCursor(term);
+            if (cursor != null) {
+                segmentCursors.add(cursor);
+            }
+        }
+
+        if (segmentCursors.isEmpty()) {
+            return null;
+        }
+        return segmentCursors.size() == 1 ? segmentCursors.get(0) : new ConcatPostingsCursor(segmentCursors);
+    }
+
+    /**
+     * Merges the posting lists of a term from different segments and removes the postings of the deleted documents.
+     * The segments are in the order of their document identifiers, so the merged postings stay sorted by
+     * document identifier. Each document is in one segment only, so the document frequency of the merged list
+     * is the one of the live documents of the whole index.
+     *
+     * @param postingLists the posting list of the term in each segment, null where the term is missing.
+     * @return the merged posting list, null if the term is in no live document.
+     */
+    private TermPostings mergePostingLists(List<TermPostings> postingLists) {
+        List<TermPostings> found = new ArrayList<>(postingLists.size());
+        for (TermPostings postingList : postingLists) {
+            if (postingList != null) {
+                found.add(postingList);
+            }
+        }
+        if (found.isEmpty()) {
+            return null;
+        }
+
+        TermPostings postings = TermPostings.concat(found);
+        if (this.liveDocs.numDeleted() > 0) {
+            postings = postings.mapDocIds(docId -> this.liveDocs.isLive(docId) ? docId : -1);
+        }
+
+        return postings.size() > 0 ? postings : null;
     }
 
     /**
@@ -151,6 +689,10 @@ public class IndexManager {
         return ++this.docId;
     }
 
+    private synchronized void setDocId(int docId) {
+        this.docId = docId;
+    }
+
     /**
      * Adds the specified file to the index and returns the identifier for the file.
      *
@@ -159,17 +701,19 @@ public class IndexManager {
      *          If any IO problem occurs, -1 is returned instead.
      */
     public int addDocument(File fileToIndex) {
-        int docId = this.getIncreasedDocId();
-        List<String> list = null;
         try {
-            this.engineMeta.updateDocsNumber();
             String fileCanonicalPath = fileToIndex.getCanonicalPath();
+            long size = fileToIndex.length();
+            long lastModified = fileToIndex.lastModified();
 
-            list = this.parser.parseFile(fileCanonicalPath);
+            // stream the terms straight into the document's postings, instead of building the whole term list.
+            DocumentInverter inverter = new DocumentInverter();
+            this.parser.parseFile(fileCanonicalPath, inverter);
 
-            this.posIndex.insertTermList(list, docId);
-
-            this.mapperDocFiles.add(docId, fileCanonicalPath);
+            // the identifier is taken once the file is parsed, so a file that cannot be read is not counted.
+            int docId = this.reserveDocId();
+            this.addInvertedDocument(this.newManifestEntry(fileCanonicalPath, docId, size, lastModified, null),
+                    inverter);
             return docId;
         } catch (IOException e) {
             e.printStackTrace();
@@ -177,6 +721,57 @@ public class IndexManager {
         }
     }
 
+    /**
+     * Indexes all the files of the directory that pass the filter, with an {@link IndexingPipeline}
+     * that is configured by the {@link IndexConfig} of the manager.
+     *
+     * @param dirToIndex the directory to walk recursively.
+     * @param filter     accepts the files to be indexed.
+     * @throws IOException if the indexing was interrupted.
+     */
+    public void addDirectory(File dirToIndex, FileFilter filter) throws IOException {
+        new IndexingPipeline(this, this.config).run(dirToIndex, filter);
+    }
+
+    /**
+     * Thread safe method that counts a new document and returns its identifier.
+     *
+     * @return integer representing the doc id.
+     */
+    int reserveDocId() {
+        this.engineMeta.updateDocsNumber();
+        return this.getIncreasedDocId();
+    }
+
+    /**
+     * Creates the manifest entry of a file that is being indexed, see {@link FileManifest#newEntry}.
+     */
+    EngineIndexPB.FileManifestEntry newManifestEntry(String fileCanonicalPath, int docId, long size,
+                                                     long lastModified, byte[] content) throws IOException {
+        return this.newFilesManifest.newEntry(fileCanonicalPath, docId, size, lastModified, content);
+    }
+
+    /**
+     * Adds the terms of a document to the index and the document to the mapper and the manifest. Thread safe.
+     *
+     * @param file     the manifest entry of the document, with its identifier from {@link #reserveDocId()}.
+     * @param inverter the terms of the document with their positions.
+     * @throws IOException if the postings had to be spilled to disk and that failed.
+     */
+    void addInvertedDocument(EngineIndexPB.FileManifestEntry file, DocumentInverter inverter) throws IOException {
+        this.posIndex.insertDocument(inverter, file.getDocId());
+        if (this.posIndex.isOverMemoryBudget()) {
+            this.posIndex.spillRun(this.getRunsFolderPath());
+        }
+
+        this.mapperDocFiles.add(file.getDocId(), file.getPath());
+        this.newFilesManifest.put(file);
+    }
+
+    Parser getParser() {
+        return this.parser;
+    }
+
     /**
      * Gets the file names for all the score documents based on document identifiers
      *
@@ -184,7 +779,17 @@ public class IndexManager {
      * @return map containing document ids as keys and as values the file names of the documents
      */
     public Map<Integer, String> getFileNames(List<ScoreDocument> listDocId) {
-        return this.mapperDocFiles.getList(listDocId);
+        Map<Integer, String> fileNames = new HashMap<>();
+        this.segmentsLock.readLock().lock();
+        try {
+            for (IndexSegment segment : this.segments) {
+                fileNames.putAll(segment.getFileNames(listDocId));
+            }
+        } finally {
+            this.segmentsLock.readLock().unlock();
+        }
+
+        return fileNames;
     }
 
 
@@ -192,6 +797,26 @@ public class IndexManager {
         return this.dir.getCanonicalFile() + "\\" + EngineUtils.INDEX_DIRECTORY_NAME;
     }
 
+    private String getRunsFolderPath() throws IOException {
+        return this.getIndexFolderPath() + "\\" + EngineUtils.RUNS_DIRECTORY_NAME;
+    }
+
+    /**
+     * Deletes the temporary folder of the spilled runs, after they are merged in the index.
+     *
+     * @throws IOException
+     */
+    private void deleteRunsFolder() throws IOException {
+        File runsDir = new File(this.getRunsFolderPath());
+        File[] leftovers = runsDir.listFiles();
+        if (leftovers != null) {
+            for (File f : leftovers) {
+                f.delete();
+            }
+        }
+        runsDir.delete();
+    }
+
     public String getLexiconFilePath() {
         try {
             return this.getIndexFolderPath() + "\\" + EngineUtils.LEXICON_FILE_NAME;
@@ -228,12 +853,81 @@ public class IndexManager {
         return null;
     }
 
+    private String getManifestFilePath() throws IOException {
+        return this.getIndexFolderPath() + "\\" + EngineUtils.MANIFEST_FILE_NAME;
+    }
+
+    private String getLiveDocsFilePath() throws IOException {
+        return this.getIndexFolderPath() + "\\" + EngineUtils.LIVE_DOCS_FILE_NAME;
+    }
+
+    private String getSegmentsFilePath() throws IOException {
+        return this.getIndexFolderPath() + "\\" + EngineUtils.SEGMENTS_FILE_NAME;
+    }
+
+    /**
+     * @return the names of the segments that were added with {@link #saveSegment()}, in the order they were added.
+     * @throws IOException
+     */
+    private List<String> readSegmentNames() throws IOException {
+        File segmentsFile = new File(this.getSegmentsFilePath());
+        if (!segmentsFile.exists()) {
+            return new ArrayList<>();
+        }
+
+        try (FileInputStream fis = new FileInputStream(segmentsFile)) {
+            return new ArrayList<>(EngineIndexPB.SegmentList.parseFrom(fis).getSegmentNameList());
+        }
+    }
+
+    /**
+     * Replaces the segments file. The new file is written aside and moved in place,
+     * so the segments file is never read half written.
+     *
+     * @param segmentNames the names of all the segments, in the order they were added.
+     * @throws IOException
+     */
+    private void writeSegmentNames(List<String> segmentNames) throws IOException {
+        Path segmentsFile = Paths.get(this.getSegmentsFilePath());
+        Path newSegmentsFile = Paths.get(this.getSegmentsFilePath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(newSegmentsFile.toFile())) {
+            EngineIndexPB.SegmentList.newBuilder().addAllSegmentName(segmentNames).build().writeTo(fos);
+        }
+
+        Files.move(newSegmentsFile, segmentsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int nextSegmentNumber(List<String> segmentNames) {
+        int next = 1;
+        for (String segmentName : segmentNames) {
+            int number = Integer.parseInt(segmentName.substring(EngineUtils.SEGMENT_DIRECTORY_PREFIX.length()));
+            next = Math.max(next, number + 1);
+        }
+
+        return next;
+    }
+
+    /**
+     * Deletes the segments that were added with {@link #saveSegment()} and the segments file.
+     *
+     * @throws IOException
+     */
+    private void deleteSegments() throws IOException {
+        List<String> segmentNames = this.readSegmentNames();
+        new File(this.getSegmentsFilePath()).delete();
+        for (String segmentName : segmentNames) {
+            new IndexSegment(this.getIndexFolderPath() + "\\" + segmentName).delete();
+        }
+    }
+
     /**
      * Saves the mapper to disk
+     *
+     * @param folderPath the folder of the segment to write.
      */
-    private void flushMapper() {
+    private void flushMapper(String folderPath) {
         try {
-            File mapperFile = new File(this.getMapperIdFilePath());
+            File mapperFile = new File(folderPath + "\\" + EngineUtils.MAPPER_FILE_NAME);
 
             // Delete file if exists and create new
             if (mapperFile.exists()) {
@@ -260,16 +954,20 @@ public class IndexManager {
 
     /**
      * Saves the meta data to disk.
+     *
+     * @param folderPath the folder of the segment to write.
      */
-    private void flushMetaData() {
+    private void flushMetaData(String folderPath) {
         try {
-            String metaFile = this.getMetadataFilePath();
+            String metaFile = folderPath + "\\" + EngineUtils.META_DATA_FILE;
             File mf = new File(metaFile);
             if (mf.exists()) {
                 mf.delete();
             }
             mf.createNewFile();
 
+            this.engineMeta.setPostingsFormat(this.config.getPostingsFormat());
+            this.engineMeta.setImpactBits(this.config.getImpactBits());
             this.engineMeta.setDirToSave(metaFile);
             this.engineMeta.flush();
         } catch (IOException e) {
@@ -277,14 +975,48 @@ public class IndexManager {
         }
     }
 
+    List<IndexSegment> getSegments() {
+        return this.segments;
+    }
+
+    LiveDocs getLiveDocs() {
+        return this.liveDocs;
+    }
+
+    FileManifest getManifest() {
+        return this.manifest;
+    }
+
+    /**
+     * @return true if the index has a manifest file, even an empty one.
+     * @throws IOException
+     */
+    boolean hasManifest() throws IOException {
+        return new File(this.getManifestFilePath()).exists();
+    }
+
     /**
      * Returns the total number of documents.
-     * @return an integer that represents total number of documents
+     * @return an integer that represents total number of live documents
      */
     public long getNumberOfDocuments() {
-        int nDocs = this.engineMeta.getValue(EngineMetaAbstract.EngineMeta.TOTAL_DOCS_KEY);
-        this.engineMeta.close();
-        return nDocs;
+        long nDocs = 0;
+        this.segmentsLock.readLock().lock();
+        try {
+            for (IndexSegment segment : this.segments) {
+                nDocs += segment.getNumberOfDocuments();
+            }
+        } finally {
+            this.segmentsLock.readLock().unlock();
+        }
+        return nDocs - this.liveDocs.numDeleted();
+    }
+
+    /**
+     * @return the stem cache that is shared by indexing and query tokenization, null if it is disabled.
+     */
+    public StemCache getStemCache() {
+        return this.parser.getStemCache();
     }
 
     /**
@@ -0,0 +1,227 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.store.DocFileMapperPB;
+import com.p4ybill.engine.store.EngineIndexPB;
+import com.p4ybill.engine.utils.EngineUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Merges independently built indexes into the files of a single segment.
+ * The lexicons of all the segments of the indexes are read in parallel in ascending order, so each term is
+ * written once with the postings of all the indexes, and only the posting lists of the current terms are in memory.
+ * The live documents get new consecutive identifiers, in the order of the indexes and of their identifiers,
+ * and the postings of the deleted documents are dropped. The new identifiers keep the order of the old ones,
+ * so the merged posting lists stay sorted by document identifier.
+ */
+final class IndexMerger {
+    private final List<IndexManager> indexes;
+    private final PostingsFormat postingsFormat;
+    private final int impactBits;
+    // the new identifier of each document identifier of each index, -1 for the deleted documents and the identifiers
+    // without a document.
+    private final List<int[]> docIdMaps;
+    private final int numberOfDocuments;
+
+    /**
+     * @param indexes        loaded indexes, in the order their documents get the new identifiers.
+     * @param postingsFormat the format of the merged posting lists. If a segment has no norms, the weights of its
+     *                       postings cannot be computed, so the merged index stores the weights in protobuf.
+     * @param impactBits     the bits of the quantized weights of the merged posting lists, 0 for none.
+     * @throws IOException
+     */
+    IndexMerger(List<IndexManager> indexes, PostingsFormat postingsFormat, int impactBits) throws IOException {
+        this.indexes = indexes;
+        this.impactBits = impactBits;
+        this.docIdMaps = new ArrayList<>(indexes.size());
+
+        PostingsFormat format = postingsFormat;
+        for (IndexManager index : indexes) {
+            for (IndexSegment segment : index.getSegments()) {
+                if (segment.getNorms() == null) {
+                    format = PostingsFormat.PROTOBUF;
+                }
+            }
+        }
+        this.postingsFormat = format;
+
+        int nextDocId = 0;
+        for (IndexManager index : indexes) {
+            int maxDocId = 0;
+            // the identifiers of an index do not start from 1 if it was saved after it was loaded.
+            BitSet docIds = new BitSet();
+            for (IndexSegment segment : index.getSegments()) {
+                maxDocId = Math.max(maxDocId, segment.getMaxDocId());
+                segment.forEachDoc((fileName, docId) -> docIds.set(docId));
+            }
+
+            int[] docIdMap = new int[maxDocId + 1];
+            docIdMap[0] = -1;
+            for (int docId = 1; docId <= maxDocId; docId++) {
+                docIdMap[docId] = docIds.get(docId) && index.getLiveDocs().isLive(docId) ? ++nextDocId : -1;
+            }
+            this.docIdMaps.add(docIdMap);
+        }
+        this.numberOfDocuments = nextDocId;
+    }
+
+    /**
+     * Writes the postings, the lexicon, the lexicon array, the norms, the mapper and the metadata of the merged index.
+     *
+     * @param folderPath the folder of the segment to write, it must not be a folder of the merged indexes.
+     * @throws IOException
+     */
+    void write(String folderPath) throws IOException {
+        this.writePostings(folderPath);
+        this.writeNorms(folderPath);
+        this.writeMapper(folderPath);
+        this.writeMetaData(folderPath);
+    }
+
+    /**
+     * @param hashContent if the content of the files is hashed by the merged manifest.
+     * @return the manifests of the indexes with the new identifiers and without the deleted documents,
+     * null if an index has no manifest.
+     * @throws IOException
+     */
+    FileManifest mergeManifests(boolean hashContent) throws IOException {
+        FileManifest merged = new FileManifest(hashContent);
+        for (int i = 0; i < this.indexes.size(); i++) {
+            IndexManager index = this.indexes.get(i);
+            if (!index.hasManifest()) {
+                return null;
+            }
+
+            int[] docIdMap = this.docIdMaps.get(i);
+            for (EngineIndexPB.FileManifestEntry entry : index.getManifest().entries()) {
+                int docId = entry.getDocId() < docIdMap.length ? docIdMap[entry.getDocId()] : -1;
+                if (docId != -1) {
+                    // a file that is in more than one index keeps the entry of the last one.
+                    merged.put(entry.toBuilder().setDocId(docId).build());
+                }
+            }
+        }
+
+        return merged;
+    }
+
+    private void writePostings(String folderPath) throws IOException {
+        List<SegmentTermReader> readers = new ArrayList<>();
+        try {
+            for (int i = 0; i < this.indexes.size(); i++) {
+                int[] docIdMap = this.docIdMaps.get(i);
+                for (IndexSegment segment : this.indexes.get(i).getSegments()) {
+                    readers.add(new SegmentTermReader(segment, docId -> docIdMap[docId]));
+                }
+            }
+
+            Iterator<Map.Entry<String, TermPostings>> sortedTerms =
+                    new SortedTermsMerger<>(readers, TermPostings::concat);
+            SegmentWriter segmentWriter = new SegmentWriter(folderPath, true, this.postingsFormat, this.impactBits,
+                    this.numberOfDocuments);
+            try {
+                while (sortedTerms.hasNext()) {
+                    Map.Entry<String, TermPostings> termPostings = sortedTerms.next();
+                    segmentWriter.addTerm(termPostings.getKey(), termPostings.getValue());
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                segmentWriter.close();
+            }
+        } finally {
+            for (SegmentTermReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Copies the norms of the live documents of the segments with the new identifiers.
+     */
+    private void writeNorms(String folderPath) throws IOException {
+        String normsFile = folderPath + "\\" + EngineUtils.NORMS_FILE_NAME;
+        if (this.postingsFormat == PostingsFormat.PROTOBUF) {
+            new File(normsFile).delete();
+            return;
+        }
+
+        double[] norms = new double[this.numberOfDocuments];
+        for (int i = 0; i < this.indexes.size(); i++) {
+            int[] docIdMap = this.docIdMaps.get(i);
+            for (IndexSegment segment : this.indexes.get(i).getSegments()) {
+                DocNorms segmentNorms = segment.getNorms();
+                for (int k = 0; k < segmentNorms.size(); k++) {
+                    int docId = segmentNorms.getFirstDocId() + k;
+                    if (docId < docIdMap.length && docIdMap[docId] != -1) {
+                        norms[docIdMap[docId] - 1] = segmentNorms.get(docId);
+                    }
+                }
+            }
+        }
+
+        new DocNorms(1, norms).save(normsFile);
+    }
+
+    /**
+     * Writes the doc store of the merged index from the doc stores of the segments, which are read once for each
+     * pass of the doc store over the documents, so the documents are not kept in memory.
+     * The new identifiers keep the order of the old ones, so the documents come in ascending order.
+     * The documents of a mapper that was written before the doc store are in the order they were written,
+     * so if a segment has one, the documents are collected and sorted instead.
+     */
+    private void writeMapper(String folderPath) throws IOException {
+        String mapperFile = folderPath + "\\" + EngineUtils.MAPPER_FILE_NAME;
+        for (IndexManager index : this.indexes) {
+            for (IndexSegment segment : index.getSegments()) {
+                if (!segment.hasDocStore()) {
+                    List<DocFileMapperPB.DocFileMapper.Doc> docs = new ArrayList<>();
+                    this.forEachDoc((fileName, docId) -> docs.add(DocFileMapperPB.DocFileMapper.Doc.newBuilder()
+                            .setDocId(docId).setFileName(fileName).build()));
+                    DocStore.write(mapperFile, docs);
+                    return;
+                }
+            }
+        }
+
+        DocStore.write(mapperFile, this::forEachDoc);
+    }
+
+    /**
+     * Passes the file name and the new identifier of each live document of the segments to the consumer.
+     */
+    private void forEachDoc(ObjIntConsumer<String> consumer) throws IOException {
+        for (int i = 0; i < this.indexes.size(); i++) {
+            int[] docIdMap = this.docIdMaps.get(i);
+            for (IndexSegment segment : this.indexes.get(i).getSegments()) {
+                segment.forEachDoc((fileName, oldDocId) -> {
+                    int docId = docIdMap[oldDocId];
+                    if (docId != -1) {
+                        consumer.accept(fileName, docId);
+                    }
+                });
+            }
+        }
+    }
+
+    private void writeMetaData(String folderPath) throws IOException {
+        String metaFile = folderPath + "\\" + EngineUtils.META_DATA_FILE;
+        // the serializer appends to the file.
+        new File(metaFile).delete();
+
+        EngineMetaData meta = new EngineMetaData();
+        meta.setDocsNumber(this.numberOfDocuments);
+        meta.setPostingsFormat(this.postingsFormat);
+        meta.setImpactBits(this.impactBits);
+        meta.setDirToSave(metaFile);
+        meta.flush();
+    }
+}
@@ -0,0 +1,354 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.queryparser.ScoreDocument;
+import com.p4ybill.engine.utils.EngineUtils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An immutable part of the index on disk, with its own postings, lexicon, lexicon array, mapper and metadata files,
+ * and the norms and positions files of the postings formats that use them.
+ * The first segment is in the index folder and is written by a full indexing, each incremental indexing adds
+ * a segment in a sub folder. The document identifiers are unique across the segments, so the posting lists
+ * of a term in different segments belong to different documents.
+ *
+ * The postings, positions, lexicon and mapper files are mapped in memory when the segment is loaded and stay mapped
+ * until it is closed, so the searches read them without opening a file.
+ */
+final class IndexSegment implements Closeable {
+    // the files of a segment, relative to its folder.
+    static final String[] FILE_NAMES = {EngineUtils.POSTINGS_FILE_NAME, EngineUtils.LEXICON_FILE_NAME,
+            EngineUtils.LEXICON_ARRAY, EngineUtils.MAPPER_FILE_NAME, EngineUtils.META_DATA_FILE,
+            EngineUtils.NORMS_FILE_NAME, EngineUtils.POSITIONS_FILE_NAME, EngineUtils.LEXICON_INDEX_FILE_NAME};
+
+    private final String folderPath;
+    private final LexiconArray lexiconArray;
+    // the index of each term in the lexicon, to look up the terms without reading the lexicon file.
+    // Null if the segment was loaded without it, the terms are then found in the blocks of the front coded lexicon.
+    private TermHashTable termTable;
+    // null if the lexicon is not front coded.
+    private FrontCodedLexicon frontCodedLexicon;
+    private final MapDocid2Files mapper;
+    private int numberOfDocuments;
+    private int maxDocId;
+    private PostingsFormat postingsFormat;
+    private PostingsCodec codec;
+    private int impactBits;
+    private DocNorms norms;
+    private MappedIndexFile postingsFile;
+    // null if the segment was written before the header.
+    private SegmentHeader header;
+    // null if the positions are in the postings.
+    private MappedIndexFile positionsFile;
+    private MappedIndexFile lexiconFile;
+
+    /**
+     * @param folderPath the folder with the files of the segment.
+     */
+    IndexSegment(String folderPath) {
+        this.folderPath = folderPath;
+        this.lexiconArray = new LexiconArray();
+        this.mapper = new MapDocid2Files();
+    }
+
+    /**
+     * Loads the lexicon array, the terms of the lexicon, the first terms of its blocks, the number of documents,
+     * the postings format and the norms of the segment in memory, and maps its postings, positions, lexicon
+     * and mapper files.
+     * The number of documents and the codec are read from the header of the postings file, or from the metadata
+     * of the segments that were written before the header.
+     * The norms are loaded even if the weights are quantized in the postings, for the weights in full precision
+     * when the segment is merged.
+     *
+     * @throws IOException
+     */
+    void load() throws IOException {
+        this.load(true);
+    }
+
+    /**
+     * Loads the segment like {@link #load()}.
+     *
+     * @param termTable false for a segment that is read term by term, like the ones of a merge, so that the terms
+     *                  are not kept in memory. The terms are then looked up in the blocks of the front coded lexicon,
+     *                  the table is built anyway for a lexicon that is not front coded.
+     * @throws IOException
+     */
+    void load(boolean termTable) throws IOException {
+        this.lexiconArray.load(this.getFilePath(EngineUtils.LEXICON_ARRAY));
+        // the segments that were written before the lexicon was front coded have no lexicon index.
+        File lexiconIndex = new File(this.getFilePath(EngineUtils.LEXICON_INDEX_FILE_NAME));
+        this.frontCodedLexicon = lexiconIndex.exists() ? FrontCodedLexicon.load(lexiconIndex.getPath()) : null;
+        this.termTable = null;
+        if (termTable || this.frontCodedLexicon == null) {
+            try (LexiconReader lexicon = this.openLexicon()) {
+                this.termTable = TermHashTable.build(lexicon, this.lexiconArray.getLexiconArraySize());
+            }
+        }
+        this.mapper.setDirToSave(new File(this.getFilePath(EngineUtils.MAPPER_FILE_NAME)));
+        this.mapper.load();
+        int mapperMaxDocId = this.mapper.getMaxDocId();
+
+        this.postingsFile = MappedIndexFile.map(this.getFilePath(EngineUtils.POSTINGS_FILE_NAME));
+        this.header = SegmentHeader.read(this.postingsFile);
+        if (this.header != null) {
+            this.numberOfDocuments = this.header.getNumberOfDocuments();
+            this.postingsFormat = this.header.getPostingsFormat();
+            this.impactBits = this.header.getImpactBits();
+        } else {
+            // a segment of the format before the header.
+            EngineMetaData meta = new EngineMetaData();
+            meta.setDirToSave(this.getFilePath(EngineUtils.META_DATA_FILE));
+            this.numberOfDocuments = meta.getValue(EngineMetaAbstract.EngineMeta.TOTAL_DOCS_KEY);
+            this.postingsFormat = PostingsFormat.fromId(
+                    meta.getValue(EngineMetaAbstract.EngineMeta.POSTINGS_FORMAT_KEY));
+            Integer impactBits = meta.getValue(EngineMetaAbstract.EngineMeta.IMPACT_BITS_KEY);
+            this.impactBits = impactBits != null && this.postingsFormat != PostingsFormat.PROTOBUF ? impactBits : 0;
+            meta.close();
+        }
+        this.codec = this.postingsFormat.codec(this.impactBits);
+        // the identifiers of a segment are distinct and from 1, so there are at least as many as its documents.
+        this.maxDocId = Math.max(mapperMaxDocId, this.numberOfDocuments);
+
+        this.norms = this.postingsFormat != PostingsFormat.PROTOBUF
+                ? DocNorms.load(this.getFilePath(EngineUtils.NORMS_FILE_NAME)) : null;
+
+        this.positionsFile = this.hasSeparatePositions()
+                ? MappedIndexFile.map(this.getFilePath(EngineUtils.POSITIONS_FILE_NAME)) : null;
+        this.lexiconFile = MappedIndexFile.map(this.getFilePath(EngineUtils.LEXICON_FILE_NAME));
+    }
+
+    /**
+     * @param terms         the terms to look up.
+     * @param withPositions false if the positions are not needed. The positions file is then not read, but
+     *                      the posting lists of the formats that have the positions in the postings have them anyway.
+     * @return the posting list of each term in this segment, in the order of the terms.
+     * Null for the terms that are not in this segment.
+     * @throws IOException
+     */
+    List<TermPostings> getTermsPostingList(List<String> terms, boolean withPositions) throws IOException {
+        List<TermPostings> termsPostingLists = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            termsPostingLists.add(this.getPostingList(term, withPositions));
+        }
+
+        return termsPostingLists;
+    }
+
+    /**
+     * The term is looked up in memory and its posting list is decoded from the mapped postings file,
+     * without a copy of its bytes.
+     *
+     * @param withPositions false to read the posting list without the positions if they are apart from the postings.
+     * @return the posting list of the term in this segment, null if the term is not in this segment.
+     * @throws IOException
+     */
+    TermPostings getPostingList(String term, boolean withPositions) throws IOException {
+        int termIndex = this.findTerm(term);
+        if (termIndex == -1) {
+            return null;
+        }
+
+        ByteBuffer positions = withPositions && this.positionsFile != null
+                ? this.positionsFile.list(this.lexiconArray.getPositionsOffset(termIndex)) : null;
+        return this.decode(this.postingsFile.list(this.lexiconArray.getPostingOffset(termIndex)), positions);
+    }
+
+    /**
+     * @return a cursor over the postings of the term in this segment, without positions, null if the term is not
+     * in this segment.
+     * @throws IOException
+     */
+    PostingsCursor getCursor(String term) throws IOException {
+        int termIndex = this.findTerm(term);
+        if (termIndex == -1) {
+            return null;
+        }
+
+        return this.codec.cursor(this.postingsFile.list(this.lexiconArray.getPostingOffset(termIndex)), this.norms);
+    }
+
+    /**
+     * @return the index of the term in the lexicon, -1 if the term is not in this segment.
+     * @throws IOException
+     */
+    private int findTerm(String term) throws IOException {
+        if (this.termTable != null) {
+            return this.termTable.find(term);
+        }
+
+        return this.frontCodedLexicon.find(term, this.lexiconFile);
+    }
+
+    /**
+     * @param prefix the prefix of the terms.
+     * @return the terms of this segment that start with the prefix, in ascending order.
+     * @throws IOException
+     */
+    List<String> getTermsWithPrefix(String prefix) throws IOException {
+        if (this.frontCodedLexicon != null) {
+            return this.frontCodedLexicon.findWithPrefix(prefix, this.lexiconFile);
+        }
+
+        List<String> terms = new ArrayList<>();
+        try (LexiconReader lexicon = this.openLexicon()) {
+            String term;
+            while ((term = lexicon.next()) != null) {
+                if (term.startsWith(prefix)) {
+                    terms.add(term);
+                } else if (term.compareTo(prefix) > 0) {
+                    break;
+                }
+            }
+        }
+
+        return terms;
+    }
+
+    /**
+     * @return a reader of the terms of the lexicon of this segment from the first one.
+     * @throws IOException
+     */
+    LexiconReader openLexicon() throws IOException {
+        String lexiconFilePath = this.getFilePath(EngineUtils.LEXICON_FILE_NAME);
+        if (this.frontCodedLexicon != null) {
+            return new FrontCodedLexicon.TermReader(new BufferedInputStream(new FileInputStream(lexiconFilePath)));
+        }
+
+        return new DelimitedLexiconReader(lexiconFilePath);
+    }
+
+    /**
+     * @param postingList the bytes of a posting list of this segment.
+     * @param positions   the bytes of the positions of the posting list if they are apart from the postings,
+     *                    null to decode the posting list without them.
+     * @return the decoded posting list.
+     * @throws IOException
+     */
+    TermPostings decode(ByteBuffer postingList, ByteBuffer positions) throws IOException {
+        return this.codec.decode(postingList, positions, this.norms);
+    }
+
+    /**
+     * @return the offset of the first posting list in the postings file.
+     */
+    long getPostingsStart() {
+        return this.header != null ? SegmentHeader.LENGTH : 0;
+    }
+
+    /**
+     * @return true if the positions of the posting lists are in the positions file.
+     */
+    boolean hasSeparatePositions() {
+        return this.codec.hasSeparatePositions();
+    }
+
+    /**
+     * @return true if the weights of the postings are quantized, and so are only close to the ones computed
+     * from the norms.
+     */
+    boolean hasQuantizedImpacts() {
+        return this.impactBits != 0;
+    }
+
+    PostingsFormat getPostingsFormat() {
+        return this.postingsFormat;
+    }
+
+    /**
+     * @return the norms of the documents of this segment, null if the weights are stored in the postings.
+     */
+    DocNorms getNorms() {
+        return this.norms;
+    }
+
+    /**
+     * @param listDocId a list with score documents.
+     * @return the file names of the documents that are in this segment.
+     */
+    Map<Integer, String> getFileNames(List<ScoreDocument> listDocId) {
+        return this.mapper.getList(listDocId);
+    }
+
+    /**
+     * @param fileNames canonical paths of files.
+     * @return the identifiers of the documents of this segment with these paths.
+     */
+    List<Integer> getDocIds(Set<String> fileNames) {
+        return this.mapper.getDocIds(fileNames);
+    }
+
+    /**
+     * Passes the file name and the identifier of each document of this segment to the consumer,
+     * in the order of the identifiers only if {@link #hasDocStore()}.
+     *
+     * @throws IOException
+     */
+    void forEachDoc(ObjIntConsumer<String> consumer) throws IOException {
+        this.mapper.forEach(consumer);
+    }
+
+    /**
+     * @return if the mapper of this segment is a doc store, false if it was written before the doc store.
+     */
+    boolean hasDocStore() {
+        return this.mapper.hasDocStore();
+    }
+
+    /**
+     * @return the number of documents that were written in the segment, including the ones deleted since.
+     */
+    int getNumberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+
+    /**
+     * @return the greatest document identifier of the segment. The identifiers of a segment that was saved after
+     * the index was loaded do not start from 1, so it can be greater than the number of documents.
+     */
+    int getMaxDocId() {
+        return this.maxDocId;
+    }
+
+    String getFilePath(String fileName) {
+        return this.folderPath + "\\" + fileName;
+    }
+
+    /**
+     * Unmaps the files of the segment, so that they can be written again. The segment must not be searched
+     * after it is closed.
+     */
+    @Override
+    public void close() {
+        for (MappedIndexFile file : new MappedIndexFile[]{this.postingsFile, this.positionsFile, this.lexiconFile}) {
+            if (file != null) {
+                file.close();
+            }
+        }
+        this.postingsFile = null;
+        this.positionsFile = null;
+        this.lexiconFile = null;
+        this.mapper.close();
+    }
+
+    /**
+     * Closes the segment and deletes its files and its folder.
+     */
+    void delete() {
+        this.close();
+        for (String fileName : FILE_NAMES) {
+            new File(this.getFilePath(fileName)).delete();
+        }
+        new File(this.folderPath).delete();
+    }
+}
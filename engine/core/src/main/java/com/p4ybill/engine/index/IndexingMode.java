@@ -0,0 +1,16 @@
+package com.p4ybill.engine.index;
+
+/**
+ * The way the indexing threads share the in-memory postings.
+ */
+public enum IndexingMode {
+    /**
+     * All the threads insert into one map that is sharded by term hash, see {@link ShardedPostingsMap}.
+     */
+    SHARED,
+    /**
+     * Each thread inserts into its own private segment and the segments are merged when the index is written,
+     * see {@link ThreadSegmentPostings}.
+     */
+    PER_THREAD
+}
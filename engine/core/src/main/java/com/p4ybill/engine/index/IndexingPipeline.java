@@ -0,0 +1,334 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.parser.Parser;
+import com.p4ybill.engine.store.EngineIndexPB;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Indexes the files of a directory in four stages that run on their own threads:
+ * <ol>
+ *     <li>a walker that lists the directories and passes the accepted files on,</li>
+ *     <li>readers that read the files from disk, which is blocking I/O,</li>
+ *     <li>analyzers that tokenize the text into the terms and positions of each file,</li>
+ *     <li>inverters that add the terms of each file to the index.</li>
+ * </ol>
+ * The stages are connected with bounded queues, so a slow stage blocks the stages before it instead of letting the
+ * read files pile up in memory. The number of threads of each stage and the capacity of the queues are taken from
+ * the {@link IndexConfig}, so the I/O and the CPU parallelism can be tuned separately.
+ * In {@link IngestionMode#VIRTUAL_THREADS} mode each file is read by its own virtual thread instead of the reader
+ * threads, while the analyzers and the inverters stay on platform threads.
+ */
+final class IndexingPipeline {
+    // files up to this size are read whole by the readers, bigger files are streamed by the analyzers.
+    private static final long MAX_READ_FILE_SIZE = 1024 * 1024;
+    // marks the end of a queue. Each worker puts it back for the other workers of its stage.
+    private static final Document END = new Document(null);
+
+    private final IndexManager indexManager;
+    private final Parser parser;
+    private final int readerThreads;
+    private final int analyzerThreads;
+    private final int inverterThreads;
+    private final int queueCapacity;
+    private final IngestionMode ingestionMode;
+    private final int maxConcurrentReads;
+
+    IndexingPipeline(IndexManager indexManager, IndexConfig config) {
+        this.indexManager = indexManager;
+        this.parser = indexManager.getParser();
+        this.readerThreads = Math.max(1, config.getReaderThreads());
+        this.analyzerThreads = Math.max(1, config.getAnalyzerThreads());
+        this.inverterThreads = Math.max(1, config.getInverterThreads());
+        this.queueCapacity = Math.max(1, config.getQueueCapacity());
+        this.ingestionMode = config.getIngestionMode();
+        this.maxConcurrentReads = Math.max(1, config.getMaxConcurrentReads());
+    }
+
+    /**
+     * Indexes all the files under the directory that pass the filter and returns when all of them are in the index.
+     * A file that cannot be read is reported and skipped.
+     *
+     * @param dir    the directory to walk recursively.
+     * @param filter accepts the files to be indexed.
+     * @throws IOException if the thread was interrupted while waiting for the pipeline, or the walk failed.
+     * The files that were listed before the walk failed are indexed.
+     */
+    void run(File dir, FileFilter filter) throws IOException {
+        this.run(visitor -> walk(dir, filter, visitor));
+    }
+
+    /**
+     * Indexes the given files and returns when all of them are in the index.
+     * A file that cannot be read is reported and skipped.
+     *
+     * @param filesToIndex the files to index.
+     * @throws IOException if the thread was interrupted while waiting for the pipeline, or the files could not
+     *                     be listed.
+     */
+    void run(Collection<File> filesToIndex) throws IOException {
+        this.run(visitor -> {
+            for (File file : filesToIndex) {
+                visitor.visit(file);
+            }
+        });
+    }
+
+    private void run(FileSource source) throws IOException {
+        BlockingQueue<Document> files = new ArrayBlockingQueue<>(this.queueCapacity);
+        BlockingQueue<Document> read = new ArrayBlockingQueue<>(this.queueCapacity);
+        BlockingQueue<Document> analyzed = new ArrayBlockingQueue<>(this.queueCapacity);
+
+        // the error of the walker, the stages still run to the end of the files that were listed.
+        AtomicReference<RuntimeException> walkFailure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> this.produce(source, files, walkFailure), "indexing-walker"));
+        if (this.ingestionMode == IngestionMode.VIRTUAL_THREADS) {
+            threads.add(new Thread(() -> this.dispatchReads(files, read), "indexing-reader"));
+        } else {
+            this.startStage("indexing-reader", this.readerThreads, files, read, this::read, threads);
+        }
+        this.startStage("indexing-analyzer", this.analyzerThreads, read, analyzed, this::analyze, threads);
+        this.startStage("indexing-inverter", this.inverterThreads, analyzed, null, this::invert, threads);
+
+        for (Thread t : threads) {
+            t.start();
+        }
+        try {
+            for (Thread t : threads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread t : threads) {
+                t.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Indexing was interrupted");
+        }
+        if (walkFailure.get() != null) {
+            throw new IOException("The files to index could not be listed", walkFailure.get());
+        }
+    }
+
+    /**
+     * Puts the files of the source in the queue, followed by the end marker. The end marker is put even if
+     * the source fails, so the stages do not wait for more files, and the error is kept for {@link #run}.
+     */
+    private void produce(FileSource source, BlockingQueue<Document> files,
+                         AtomicReference<RuntimeException> failure) {
+        try {
+            source.visitFiles(f -> files.put(new Document(f)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure.set(e);
+        } finally {
+            try {
+                files.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Lists the directories iteratively, breadth first, and passes the accepted files to the visitor.
+     *
+     * @param dir     the directory to walk recursively.
+     * @param filter  accepts the files to be visited.
+     * @param visitor receives the accepted files.
+     * @throws InterruptedException if the visitor was interrupted.
+     */
+    static void walk(File dir, FileFilter filter, FileVisitor visitor) throws InterruptedException {
+        Deque<File> dirs = new ArrayDeque<>();
+        dirs.add(dir);
+        while (!dirs.isEmpty()) {
+            File[] children = dirs.poll().listFiles();
+            if (children == null) {
+                continue;
+            }
+
+            for (File f : children) {
+                if (f.isDirectory()) {
+                    dirs.add(f);
+                } else if (filter.accept(f)) {
+                    visitor.visit(f);
+                }
+            }
+        }
+    }
+
+    private void startStage(String name, int nThreads, BlockingQueue<Document> in, BlockingQueue<Document> out,
+                            Stage stage, List<Thread> threads) {
+        AtomicInteger running = new AtomicInteger(nThreads);
+        for (int i = 1; i <= nThreads; i++) {
+            threads.add(new Thread(() -> this.work(in, out, stage, running), name + "-" + i));
+        }
+    }
+
+    /**
+     * Processes documents of the input queue until the end marker. The last worker of the stage to finish
+     * puts the end marker in the output queue.
+     */
+    private void work(BlockingQueue<Document> in, BlockingQueue<Document> out, Stage stage, AtomicInteger running) {
+        try {
+            Document doc;
+            while ((doc = in.take()) != END) {
+                try {
+                    if (stage.process(doc) && out != null) {
+                        out.put(doc);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            in.put(END);
+            if (running.decrementAndGet() == 0 && out != null) {
+                out.put(END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts a read for each document of the input queue, with at most {@link #maxConcurrentReads} reads in flight.
+     * When all the reads are done it puts the end marker in the output queue.
+     */
+    private void dispatchReads(BlockingQueue<Document> in, BlockingQueue<Document> out) {
+        ExecutorService executor = this.newReadExecutor();
+        Semaphore inFlight = new Semaphore(this.maxConcurrentReads);
+        try {
+            Document doc;
+            while ((doc = in.take()) != END) {
+                inFlight.acquire();
+                Document toRead = doc;
+                executor.execute(() -> {
+                    try {
+                        this.read(toRead);
+                        out.put(toRead);
+                    } catch (IOException | RuntimeException e) {
+                        e.printStackTrace();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            out.put(END);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return an executor that starts a virtual thread per task. The project is built for runtimes without
+     * virtual threads, so it is looked up by reflection and the reader threads are used when it is missing.
+     */
+    private ExecutorService newReadExecutor() {
+        try {
+            Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(this.readerThreads);
+        }
+    }
+
+    /**
+     * Reads the file in memory unless it is too big. The document gets its identifier only when it is inverted,
+     * so the files that cannot be read or analyzed are not counted in the number of documents.
+     */
+    private boolean read(Document doc) throws IOException {
+        doc.path = doc.file.getCanonicalPath();
+        // taken before the file is read, so that a change while it is read is found by the next re-index.
+        long size = doc.file.length();
+        long lastModified = doc.file.lastModified();
+        byte[] content = null;
+        if (size <= MAX_READ_FILE_SIZE) {
+            content = Files.readAllBytes(doc.file.toPath());
+            // same decoding as Parser#parseFile
+            doc.text = new String(content, Charset.defaultCharset());
+        }
+
+        doc.manifestEntry = this.indexManager.newManifestEntry(doc.path, 0, size, lastModified, content);
+        return true;
+    }
+
+    private boolean analyze(Document doc) throws IOException {
+        doc.inverter = new DocumentInverter();
+        if (doc.text != null) {
+            this.parser.parseText(doc.text, doc.inverter);
+            doc.text = null;
+        } else {
+            this.parser.parseFile(doc.path, doc.inverter);
+        }
+        return true;
+    }
+
+    private boolean invert(Document doc) throws IOException {
+        int docId = this.indexManager.reserveDocId();
+        this.indexManager.addInvertedDocument(doc.manifestEntry.toBuilder().setDocId(docId).build(), doc.inverter);
+        return true;
+    }
+
+    @FunctionalInterface
+    interface FileVisitor {
+        void visit(File file) throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface FileSource {
+        /**
+         * Passes each file to index to the visitor.
+         */
+        void visitFiles(FileVisitor visitor) throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        /**
+         * @return true if the document has to be passed to the next stage.
+         */
+        boolean process(Document doc) throws IOException;
+    }
+
+    /**
+     * A file on its way through the stages.
+     */
+    private static final class Document {
+        private final File file;
+        private String path;
+        private String text;
+        private EngineIndexPB.FileManifestEntry manifestEntry;
+        private DocumentInverter inverter;
+
+        Document(File file) {
+            this.file = file;
+        }
+    }
+}
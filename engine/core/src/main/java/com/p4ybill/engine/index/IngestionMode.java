@@ -0,0 +1,17 @@
+package com.p4ybill.engine.index;
+
+/**
+ * The way the files are read by the {@link IndexingPipeline}.
+ */
+public enum IngestionMode {
+    /**
+     * A fixed number of platform threads read the files, see {@link IndexConfig#setReaderThreads(int)}.
+     */
+    PLATFORM_THREADS,
+    /**
+     * Each file is read by its own virtual thread and the number of reads in flight is bounded by
+     * {@link IndexConfig#setMaxConcurrentReads(int)}. Suits network or slow storage where the latency of opening and
+     * reading a file dominates. Virtual threads need Java 21, on older runtimes the reader threads are used instead.
+     */
+    VIRTUAL_THREADS
+}
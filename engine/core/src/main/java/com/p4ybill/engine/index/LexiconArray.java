@@ -5,29 +5,64 @@ import com.p4ybill.engine.store.EngineIndexPB;
 import java.io.FileInputStream;
 import java.io.IOException;
 
+/**
+ * The records of the lexicon array of a segment in memory. The fields of the records are kept in arrays
+ * indexed by the index of the term, which the lookups read directly.
+ */
 public class LexiconArray {
-    EngineIndexPB.LexiconArray lexiconArray;
+    private int size;
+    private int[] docFrequencies;
+    private long[] postingOffsets;
+    private long[] termOffsets;
+    private long[] positionsOffsets;
 
     protected void setLexiconArray(EngineIndexPB.LexiconArray lexiconArray) {
-        this.lexiconArray = lexiconArray;
+        this.size = lexiconArray.getLexiconItemCount();
+        this.docFrequencies = new int[this.size];
+        this.postingOffsets = new long[this.size];
+        this.termOffsets = new long[this.size];
+        this.positionsOffsets = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            EngineIndexPB.LexiconArrayItem item = lexiconArray.getLexiconItem(i);
+            this.docFrequencies[i] = item.getDocFrequency();
+            this.postingOffsets[i] = item.getPostingOffset();
+            this.termOffsets[i] = item.getTermOffset();
+            this.positionsOffsets[i] = item.getPositionsOffset();
+        }
     }
 
-    public EngineIndexPB.LexiconArrayItem getLexiconTermRecord(int pos) {
-        if (pos > this.getLexiconArraySize() - 1) {
-            return null;
-        }
+    /**
+     * @param pos the index of the term.
+     * @return the number of documents of the posting list of the term.
+     */
+    public int getDocFrequency(int pos) {
+        return this.docFrequencies[pos];
+    }
+
+    /**
+     * @param pos the index of the term.
+     * @return the offset of the posting list of the term in the postings file.
+     */
+    public long getPostingOffset(int pos) {
+        return this.postingOffsets[pos];
+    }
 
-        return this.lexiconArray.getLexiconItem(pos);
+    /**
+     * @param pos the index of the term.
+     * @return the offset of the positions of the term in the positions file, 0 if the segment has none.
+     */
+    public long getPositionsOffset(int pos) {
+        return this.positionsOffsets[pos];
     }
 
     public int getLexiconArraySize() {
-        return this.lexiconArray.getLexiconItemCount();
+        return this.size;
     }
 
     public void load(String filePath) throws IOException {
         if (filePath != null) {
             FileInputStream fis = new FileInputStream(filePath);
-            this.lexiconArray = EngineIndexPB.LexiconArray.parseFrom(fis);
+            this.setLexiconArray(EngineIndexPB.LexiconArray.parseFrom(fis));
             fis.close();
         }
     }
@@ -0,0 +1,16 @@
+package com.p4ybill.engine.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the terms of the lexicon file of a segment one after the other, in ascending order.
+ * The i-th term is the term of the i-th record of the lexicon array.
+ */
+interface LexiconReader extends Closeable {
+    /**
+     * @return the next term, null at the end of the lexicon.
+     * @throws IOException
+     */
+    String next() throws IOException;
+}
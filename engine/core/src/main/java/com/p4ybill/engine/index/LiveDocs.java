@@ -0,0 +1,86 @@
+package com.p4ybill.engine.index;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * Tells which documents of the index are live, that is not deleted. The postings and the mapper of the segments are
+ * immutable, so a deleted document stays in them and is filtered out when the index is searched.
+ * Only the deleted documents are marked, one bit per document identifier, so the bitset stays empty and the file
+ * stays small as long as there are no deletions, and new documents never have to be added to it.
+ *
+ * Thread safe.
+ */
+final class LiveDocs {
+    private BitSet deleted;
+
+    LiveDocs() {
+        this.deleted = new BitSet();
+    }
+
+    /**
+     * Loads the deleted documents from the file. If the file does not exist, all documents are live.
+     *
+     * @param filePath the file that was written by {@link #save(String)}.
+     * @throws IOException
+     */
+    synchronized void load(String filePath) throws IOException {
+        File liveDocsFile = new File(filePath);
+        this.deleted = liveDocsFile.exists()
+                ? BitSet.valueOf(Files.readAllBytes(liveDocsFile.toPath())) : new BitSet();
+    }
+
+    /**
+     * Writes the deleted documents to the file. The new file is written aside and moved in place,
+     * so the file is never read half written.
+     *
+     * @param filePath the file to write.
+     * @throws IOException
+     */
+    synchronized void save(String filePath) throws IOException {
+        Path liveDocsFile = Paths.get(filePath);
+        Path newLiveDocsFile = Paths.get(filePath + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(newLiveDocsFile.toFile())) {
+            fos.write(this.deleted.toByteArray());
+        }
+
+        Files.move(newLiveDocsFile, liveDocsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param docId identifier of the document.
+     * @return true if the document was live and it is deleted now.
+     */
+    synchronized boolean delete(int docId) {
+        if (this.deleted.get(docId)) {
+            return false;
+        }
+
+        this.deleted.set(docId);
+        return true;
+    }
+
+    synchronized boolean isLive(int docId) {
+        return !this.deleted.get(docId);
+    }
+
+    /**
+     * @return a copy of the deleted documents, which does not change with the next deletions.
+     */
+    synchronized BitSet getDeleted() {
+        return (BitSet) this.deleted.clone();
+    }
+
+    /**
+     * @return the number of deleted documents.
+     */
+    synchronized int numDeleted() {
+        return this.deleted.cardinality();
+    }
+}
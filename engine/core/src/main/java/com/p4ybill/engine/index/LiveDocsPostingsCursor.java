@@ -0,0 +1,70 @@
+package com.p4ybill.engine.index;
+
+import java.util.BitSet;
+
+/**
+ * A cursor that skips the postings of the deleted documents in the cursor of a term. The deleted documents are still
+ * in the posting lists, so the greatest weights of the lists and of their blocks stay upper bounds of the weights of
+ * the live postings, and the cost still counts the deleted documents.
+ */
+final class LiveDocsPostingsCursor implements PostingsCursor {
+    private final PostingsCursor cursor;
+    private final BitSet deleted;
+
+    /**
+     * @param cursor  the cursor of the term.
+     * @param deleted the deleted documents, it must not change while the cursor is used.
+     */
+    LiveDocsPostingsCursor(PostingsCursor cursor, BitSet deleted) {
+        this.cursor = cursor;
+        this.deleted = deleted;
+    }
+
+    @Override
+    public int docId() {
+        return this.cursor.docId();
+    }
+
+    @Override
+    public int nextDoc() {
+        return this.skipDeleted(this.cursor.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return this.skipDeleted(this.cursor.advance(target));
+    }
+
+    private int skipDeleted(int docId) {
+        while (docId != NO_MORE_DOCS && this.deleted.get(docId)) {
+            docId = this.cursor.nextDoc();
+        }
+
+        return docId;
+    }
+
+    @Override
+    public double weight() {
+        return this.cursor.weight();
+    }
+
+    @Override
+    public int cost() {
+        return this.cursor.cost();
+    }
+
+    @Override
+    public double maxWeight() {
+        return this.cursor.maxWeight();
+    }
+
+    @Override
+    public int advanceShallow(int target) {
+        return this.cursor.advanceShallow(target);
+    }
+
+    @Override
+    public double blockMaxWeight() {
+        return this.cursor.blockMaxWeight();
+    }
+}
@@ -3,15 +3,22 @@ package com.p4ybill.engine.index;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Parser;
 import com.p4ybill.engine.queryparser.ScoreDocument;
-import com.p4ybill.engine.store.ProtobufSerializerUtils;
 import com.p4ybill.engine.store.DocFileMapperPB;
 
 import java.io.*;
 import java.util.*;
-
-public class MapDocid2Files {
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Maps the document identifiers to the file names of the documents. The mapper file is written as a {@link DocStore},
+ * so the file names of a page of results are looked up one by one. The mapper files that were written before the
+ * doc store are still read message by message.
+ */
+public class MapDocid2Files implements Closeable {
     private File mapFile = null;
     private List<DocFileMapperPB.DocFileMapper.Doc> docList;
+    // null until the mapper is loaded, or if its file was written before the doc store.
+    private DocStore docStore;
 
     public MapDocid2Files() {
         this.docList = new ArrayList<>();
@@ -36,6 +43,10 @@ public class MapDocid2Files {
      * null if document was not found or there was an expection.
      */
     public String get(int docId) {
+        if (this.docStore != null) {
+            return this.docStore.get(docId);
+        }
+
         try {
             FileInputStream fis = new FileInputStream(this.mapFile);
             Parser<DocFileMapperPB.DocFileMapper.Doc> parser = DocFileMapperPB.DocFileMapper.Doc.parser();
@@ -63,7 +74,8 @@ public class MapDocid2Files {
     }
 
     /**
-     * Processes each message separately instead of loading the whole mapper in memory.
+     * Looks up each document in the doc store, or processes each message separately instead of loading
+     * the whole mapper in memory if the mapper was written before the doc store.
      *
      * @param listDocId A list containing score documents.
      * @return Map with document identifier and its corresponding filename.
@@ -73,6 +85,15 @@ public class MapDocid2Files {
         if (listDocId == null) {
             return docs;
         }
+        if (this.docStore != null) {
+            for (ScoreDocument scoreDocument : listDocId) {
+                String fileName = this.docStore.get(scoreDocument.getDocId());
+                if (fileName != null) {
+                    docs.put(scoreDocument.getDocId(), fileName);
+                }
+            }
+            return docs;
+        }
         int counter = listDocId.size();
         try {
             FileInputStream fis = new FileInputStream(this.mapFile);
@@ -101,10 +122,99 @@ public class MapDocid2Files {
         return docs;
     }
 
+    /**
+     * Gets the identifiers of the documents with the specified file names.
+     * Processes each message separately instead of loading the whole mapper in memory.
+     *
+     * @param fileNames the file names to look for.
+     * @return the identifiers of the documents whose file name is one of the file names.
+     */
+    protected List<Integer> getDocIds(Set<String> fileNames) {
+        List<Integer> docIds = new ArrayList<>();
+        try {
+            this.forEach((fileName, docId) -> {
+                if (fileNames.contains(fileName)) {
+                    docIds.add(docId);
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return docIds;
+    }
+
+    /**
+     * Passes the file name and the identifier of each document of the saved mapper to the consumer.
+     * The documents of the doc store are in the order of their identifiers, the ones of an older mapper
+     * in the order they were written.
+     *
+     * @throws IOException
+     */
+    void forEach(ObjIntConsumer<String> consumer) throws IOException {
+        if (this.docStore != null) {
+            this.docStore.forEach(consumer);
+            return;
+        }
+
+        try (InputStream is = new BufferedInputStream(new FileInputStream(this.mapFile))) {
+            Parser<DocFileMapperPB.DocFileMapper.Doc> parser = DocFileMapperPB.DocFileMapper.Doc.parser();
+            DocFileMapperPB.DocFileMapper.Doc doc;
+            // until EOF
+            while ((doc = parser.parseDelimitedFrom(is)) != null) {
+                consumer.accept(doc.getFileName(), doc.getDocId());
+            }
+        }
+    }
+
+    /**
+     * @return if the saved mapper is a doc store, so that {@link #forEach(ObjIntConsumer)} passes the documents
+     * in the order of their identifiers.
+     */
+    boolean hasDocStore() {
+        return this.docStore != null;
+    }
+
+    /**
+     * @return the greatest identifier of the saved mapper, 0 if it has no documents.
+     * @throws IOException
+     */
+    int getMaxDocId() throws IOException {
+        if (this.docStore != null) {
+            return this.docStore.lastDocId();
+        }
+
+        int[] maxDocId = {0};
+        this.forEach((fileName, docId) -> maxDocId[0] = Math.max(maxDocId[0], docId));
+        return maxDocId[0];
+    }
+
     public void setDirToSave(File filePath) {
         this.mapFile = filePath;
     }
 
+    /**
+     * Maps the doc store of the saved mapper file in memory, see {@link #setDirToSave(File)}.
+     * A mapper file that was written before the doc store is read message by message instead.
+     *
+     * @throws IOException
+     */
+    public void load() throws IOException {
+        this.close();
+        this.docStore = DocStore.open(this.mapFile.getPath());
+    }
+
+    /**
+     * Unmaps the doc store, so that the mapper file can be written again.
+     */
+    @Override
+    public void close() {
+        if (this.docStore != null) {
+            this.docStore.close();
+            this.docStore = null;
+        }
+    }
+
     /**
      * Saves the mapper to a file and releases resources.
      */
@@ -118,13 +228,11 @@ public class MapDocid2Files {
     }
 
     /**
-     * Writes the list of messages to a file.
+     * Writes the documents to the file as a {@link DocStore}.
      *
      * @throws IOException
      */
     private void writeDocs() throws IOException {
-        FileOutputStream fos = new FileOutputStream(this.mapFile, true);
-        ProtobufSerializerUtils.writeListDelimited(this.docList, fos);
-        fos.close();
+        DocStore.write(this.mapFile.getPath(), this.docList);
     }
 }
@@ -0,0 +1,167 @@
+package com.p4ybill.engine.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of a segment that is mapped in memory once, when the segment is loaded, so that the lists of the file are
+ * read from the page cache of the OS without a system call and without a copy. The file is mapped in chunks of
+ * {@link #CHUNK_SIZE} bytes, because a buffer holds less than 2GB, so the files can be of any size.
+ *
+ * The chunks are never moved, each read works on a duplicate of a chunk, so the file can be read by many threads
+ * at the same time.
+ */
+final class MappedIndexFile implements Closeable {
+    static final int CHUNK_SHIFT = 30;
+    static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final long length;
+    private MappedByteBuffer[] chunks;
+
+    private MappedIndexFile(long length, MappedByteBuffer[] chunks) {
+        this.length = length;
+        this.chunks = chunks;
+    }
+
+    /**
+     * @param filePath the file to map, it must not be written while it is mapped.
+     * @return the mapped file.
+     * @throws IOException
+     */
+    static MappedIndexFile map(String filePath) throws IOException {
+        // the mapping stays valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long length = channel.size();
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int c = 0; c < chunks.length; c++) {
+                long start = (long) c << CHUNK_SHIFT;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, length - start));
+            }
+
+            return new MappedIndexFile(length, chunks);
+        }
+    }
+
+    long length() {
+        return this.length;
+    }
+
+    /**
+     * @param offset the offset of the first byte.
+     * @param length the number of bytes.
+     * @return the bytes, a view of the mapped chunk unless they cross two chunks, then a copy.
+     */
+    ByteBuffer slice(long offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > this.length) {
+            throw new IndexOutOfBoundsException("Bytes " + offset + " to " + (offset + length) + " of a file of "
+                    + this.length + " bytes");
+        }
+
+        int chunk = (int) (offset >>> CHUNK_SHIFT);
+        int start = (int) (offset & CHUNK_MASK);
+        if (start + length <= CHUNK_SIZE) {
+            ByteBuffer buf = this.chunks[chunk].duplicate();
+            buf.position(start);
+            buf.limit(start + length);
+            return buf.slice();
+        }
+
+        byte[] bytes = new byte[length];
+        for (int copied = 0; copied < length; ) {
+            ByteBuffer buf = this.chunks[(int) ((offset + copied) >>> CHUNK_SHIFT)].duplicate();
+            buf.position((int) ((offset + copied) & CHUNK_MASK));
+            int n = Math.min(buf.remaining(), length - copied);
+            buf.get(bytes, copied, n);
+            copied += n;
+        }
+
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Reads a list that was written after its length in variable bytes, like the posting lists.
+     *
+     * @param offset the offset of the length of the list.
+     * @return the bytes of the list.
+     */
+    ByteBuffer list(long offset) {
+        int length = 0;
+        long position = offset;
+        int b;
+        while ((b = this.get(position++)) < 128) {
+            length = 128 * length + b;
+        }
+        length = 128 * length + (b - 128);
+
+        return this.slice(position, length);
+    }
+
+    /**
+     * @param offset the offset of the first byte.
+     * @param length the number of bytes.
+     * @return a stream of the bytes.
+     */
+    InputStream stream(long offset, int length) {
+        ByteBuffer buf = this.slice(offset, length);
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buf.hasRemaining() ? buf.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!buf.hasRemaining()) {
+                    return len == 0 ? 0 : -1;
+                }
+                int n = Math.min(len, buf.remaining());
+                buf.get(b, off, n);
+                return n;
+            }
+        };
+    }
+
+    private int get(long position) {
+        if (position >= this.length) {
+            throw new IndexOutOfBoundsException("Byte " + position + " of a file of " + this.length + " bytes");
+        }
+
+        return this.chunks[(int) (position >>> CHUNK_SHIFT)].get((int) (position & CHUNK_MASK)) & 0xff;
+    }
+
+    /**
+     * Unmaps the file, so that it can be written or deleted, which some systems refuse while the file is mapped.
+     * The file must not be read after it is closed, by any thread, a read of an unmapped buffer crashes the JVM,
+     * so the index manager only closes the segments while no search holds them. If the buffers cannot be unmapped,
+     * they are left to the garbage collector.
+     */
+    @Override
+    public void close() {
+        MappedByteBuffer[] chunks = this.chunks;
+        this.chunks = new MappedByteBuffer[0];
+        for (MappedByteBuffer chunk : chunks) {
+            unmap(chunk);
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the buffer is unmapped when it is garbage collected.
+        }
+    }
+}
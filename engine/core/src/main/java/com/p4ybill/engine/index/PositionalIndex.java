@@ -1,57 +1,88 @@
 package com.p4ybill.engine.index;
 
-import com.p4ybill.engine.store.EngineIndexPB;
-import com.p4ybill.engine.search.TermPostingSearchBS;
 import com.p4ybill.engine.utils.EngineUtils;
-import com.p4ybill.engine.utils.VariableByteEncoding;
+import com.p4ybill.engine.utils.IntArrayList;
 
 import java.io.*;
-import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public final class PositionalIndex {
-    private final String LEXICON_TERM_DELIMITER = "|";
-    private final int LEX_TERM_DELIMITER_LENGTH = LEXICON_TERM_DELIMITER.getBytes().length;
+    private final TermDictionary dictionary;
+    private PostingsAccumulator h;
 
-    private Map<String, List<PostingPos>> h;
+    // inserts hold the read lock, spilling the in-memory postings to a run holds the write lock.
+    private final ReadWriteLock spillLock;
+    private final AtomicLong estimatedMemory;
+    private long memoryBudget;
+    private List<PostingsRunFile> runs;
 
     private Map<Integer, Double> docNorms;
-    private LexiconArray lexiconArray;
+    private PostingsFormat postingsFormat;
+    private int impactBits;
 
     public PositionalIndex() {
-        this.h = new TreeMap<>();
+        this(IndexingMode.SHARED);
+    }
+
+    /**
+     * @param mode how the indexing threads share the in-memory postings.
+     */
+    public PositionalIndex(IndexingMode mode) {
+        this.dictionary = new TermDictionary();
+        this.h = mode == IndexingMode.PER_THREAD
+                ? new ThreadSegmentPostings(this.dictionary) : new ShardedPostingsMap(this.dictionary);
         this.docNorms = new ConcurrentHashMap<>();
-        this.lexiconArray = new LexiconArray();
+        this.postingsFormat = PostingsFormat.VBYTE_BLOCKS;
+        this.spillLock = new ReentrantReadWriteLock();
+        this.estimatedMemory = new AtomicLong();
+        this.memoryBudget = 0;
+        this.runs = new ArrayList<>();
+    }
+
+    /**
+     * Sets the maximum heap in bytes that the in-memory postings should use while indexing.
+     * When it is exceeded, the postings can be spilled to disk with {@link #spillRun(String)}.
+     *
+     * @param memoryBudget bytes for the in-memory postings. Zero or less means no limit.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @param postingsFormat the format of the posting lists that are written by {@link #writeIndex(String, boolean, int)}.
+     */
+    public void setPostingsFormat(PostingsFormat postingsFormat) {
+        this.postingsFormat = postingsFormat;
+    }
+
+    /**
+     * @param impactBits the bits of the quantized weights of the posting lists that are written, 0 for none.
+     */
+    public void setImpactBits(int impactBits) {
+        this.impactBits = impactBits;
     }
 
     /**
      * Thread safe method that indexes a term with its position in the document, to a doc with a specific identifier.
+     * Depending on the {@link IndexingMode}, only the shard of the term is locked or no lock is taken at all.
+     * The position is added to the last document of the term's posting list, so the positions of a document
+     * have to be inserted before the next document, use {@link #insertTermList(List, int)} for whole documents.
      *
      * @param sTerm string that represents the term to be indexed.
      * @param docId integer identifier of the doc.
      * @param pos integer term's position in the document
      */
-    public synchronized void insert(String sTerm, int docId, int pos) {
-        List<PostingPos> postingMap = h.get(sTerm);
-
-        if (postingMap != null) {
-            PostingPos doc = new PostingPos(docId);
-
-            if (postingMap.contains(doc)) {
-                doc = postingMap.get(postingMap.indexOf(doc));
-                doc.addTermPosition(pos);
-            } else {
-                doc.addTermPosition(pos);
-                postingMap.add(doc);
-            }
-        } else {
-            postingMap = new ArrayList<>();
-            PostingPos posDoc = new PostingPos(docId);
-            posDoc.addTermPosition(pos);
-
-            postingMap.add(posDoc);
-            h.put(sTerm, postingMap);
+    public void insert(String sTerm, int docId, int pos) {
+        this.spillLock.readLock().lock();
+        try {
+            this.estimatedMemory.addAndGet(this.h.insert(this.dictionary.getOrAdd(sTerm), docId, pos));
+        } finally {
+            this.spillLock.readLock().unlock();
         }
     }
 
@@ -62,19 +93,75 @@ public final class PositionalIndex {
      * @param docId    the terms from termList will be associated to the document with docId.
      */
     protected void insertTermList(List<String> termList, int docId) {
-        Map<String, Integer> tfDocMapper = new HashMap<String, Integer>();
+        DocumentInverter inverter = new DocumentInverter();
         for (int i = 0; i < termList.size(); i++) {
-            String term = termList.get(i);
-            if (tfDocMapper.containsKey(termList.get(i))) {
-                Integer tftd = tfDocMapper.get(term);
-                tfDocMapper.replace(term, ++tftd);
-            } else {
-                tfDocMapper.put(term, 1);
+            inverter.accept(termList.get(i), i);
+        }
+
+        this.insertDocument(inverter, docId);
+    }
+
+    /**
+     * Indexes the terms that were collected for a document and also computes the norm of the document.
+     * Each posting list is touched once per document.
+     *
+     * @param inverter the positions of each term of the document.
+     * @param docId    the terms will be associated to the document with docId.
+     */
+    protected void insertDocument(DocumentInverter inverter, int docId) {
+        Map<String, IntArrayList> docPositions = inverter.getTermPositions();
+        int[] tftds = new int[docPositions.size()];
+        int t = 0;
+        long docMemory = 0;
+        this.spillLock.readLock().lock();
+        try {
+            for (Map.Entry<String, IntArrayList> entry : docPositions.entrySet()) {
+                IntArrayList positions = entry.getValue();
+                tftds[t++] = positions.size();
+                int termId = this.dictionary.getOrAdd(entry.getKey());
+                docMemory += this.h.add(termId, docId, positions.elements(), 0, positions.size());
             }
-            insert(term, docId, i);
+            this.estimatedMemory.addAndGet(docMemory);
+        } finally {
+            this.spillLock.readLock().unlock();
         }
 
-        docNorms.put(docId, this.computeNorm(tfDocMapper.values()));
+        docNorms.put(docId, this.computeNorm(tftds));
+    }
+
+    /**
+     * @return true if a memory budget is set and the in-memory postings exceed it.
+     */
+    protected boolean isOverMemoryBudget() {
+        return this.memoryBudget > 0 && this.estimatedMemory.get() > this.memoryBudget;
+    }
+
+    /**
+     * Writes the in-memory postings as a sorted run in the given directory and releases them.
+     * Inserts are blocked while the run is written. If another thread spilled the postings in the meantime
+     * and they are no longer over the budget, nothing is written.
+     *
+     * @param runsDirPath the directory to write the run into. It is created if it does not exist.
+     * @throws IOException
+     */
+    protected void spillRun(String runsDirPath) throws IOException {
+        this.spillLock.writeLock().lock();
+        try {
+            if (!this.isOverMemoryBudget()) {
+                return;
+            }
+
+            new File(runsDirPath).mkdirs();
+            PostingsRunFile run = new PostingsRunFile(
+                    new File(runsDirPath + "\\" + EngineUtils.RUN_FILE_PREFIX + this.runs.size() + ".ser"));
+            run.write(this.h.sortedTermPostings());
+            this.runs.add(run);
+
+            this.h.clear();
+            this.estimatedMemory.set(0);
+        } finally {
+            this.spillLock.writeLock().unlock();
+        }
     }
 
     /**
@@ -89,212 +176,123 @@ public final class PositionalIndex {
     }
 
     /**
-     * Computes the norm
-     * @param tftds Collection of all term frequencies in a document.
-     * @return double the norm of the doc.
+     * @param tf   the frequency of a term in a document.
+     * @param norm the norm of the document.
+     * @return the weight of the term in the document.
      */
-    private double computeNorm(Collection<Integer> tftds) {
-        return Math.sqrt(tftds.stream().mapToDouble(x -> Math.pow(x, 2)).sum());
+    static double weight(int tf, double norm) {
+        return (1 + Math.log10(tf)) / norm;
     }
 
     /**
-     * Searches a term in the index.
-     *
-     * @param term string the term to look in the index
-     * @param postingsFc FileChannel of the postings file
-     * @param lexiconFc FileChannel of the lexicon file
-     * @return the posting list of a term
+     * Computes the norm
+     * @param tftds all term frequencies in a document.
+     * @return double the norm of the doc.
      */
-    public EngineIndexPB.PostingList getPostingList(String term, FileChannel postingsFc, FileChannel lexiconFc) {
-        TermPostingSearchBS bs = new TermPostingSearchBS(this.lexiconArray, postingsFc, lexiconFc);
-
-        return bs.search(term);
+    private double computeNorm(int[] tftds) {
+        double sum = 0;
+        for (int tf : tftds) {
+            sum += (double) tf * tf;
+        }
+        return Math.sqrt(sum);
     }
 
     /**
-     * Creates a file in the specified path.
+     * Computes the weight of each posting from the norm of its document and sorts the postings by document identifier,
+     * because the documents of a term can be inverted out of order.
      *
-     * @param filePath string the filepath of the file.
+     * @param buffer the in-memory posting list of a term.
+     * @return the posting list to write.
      */
-    private void createNewFile(String filePath) {
-        File f = new File(filePath);
-        if (f.exists()) {
-            f.delete();
+    private TermPostings toTermPostings(PostingsBuffer buffer) {
+        int size = buffer.size();
+        int[] bufferPositions = buffer.getPositions();
+        int[] positionStarts = new int[size + 1];
+        // each identifier is in a posting once, so the identifier and the index can be sorted together.
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            positionStarts[i + 1] = positionStarts[i] + buffer.getTermFrequency(i);
+            order[i] = ((long) buffer.getDocId(i) << 32) | i;
         }
-        try {
-            f.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
+        Arrays.sort(order);
+
+        int[] docIds = new int[size];
+        int[] termFrequencies = new int[size];
+        double[] weights = new double[size];
+        int[] positions = new int[positionStarts[size]];
+        int p = 0;
+        for (int j = 0; j < size; j++) {
+            int i = (int) order[j];
+            int tf = buffer.getTermFrequency(i);
+            docIds[j] = buffer.getDocId(i);
+            termFrequencies[j] = tf;
+            // compute the weight based on the norm.
+            weights[j] = weight(tf, this.getNorm(docIds[j]));
+            System.arraycopy(bufferPositions, positionStarts[i], positions, p, tf);
+            p += tf;
         }
+
+        return new TermPostings(size, docIds, termFrequencies, weights, positions);
     }
 
     /**
      * Writes the index to the disk in 3 different files
      * One for the Lexicon's array, one for the lexicon itself and one for the postings.
+     * The norms of the documents are written too, unless the weights are stored in the postings.
      *
-     * @param indexFilePath  The filepath to save the index to.
-     * @param createNewFiles Boolean that specifies if the three files should be overwritten
-     *                       This might come in handy in the future.
+     * @param indexFilePath     The filepath to save the index to.
+     * @param createNewFiles    Boolean that specifies if the three files should be overwritten
+     *                          This might come in handy in the future.
+     * @param numberOfDocuments the number of documents that are written, for the header of the postings file.
      * @throws IOException
      */
-    protected void writeIndex(String indexFilePath, boolean createNewFiles) throws IOException {
-        Set<String> sortedTerms = this.h.keySet();
-        String lexiconFileName = indexFilePath + "\\" + EngineUtils.LEXICON_FILE_NAME;
-        String lexiconArrayFileName = indexFilePath + "\\" + EngineUtils.LEXICON_ARRAY;
-        String postingsFileName = indexFilePath + "\\" + EngineUtils.POSTINGS_FILE_NAME;
-
-        if (createNewFiles) {
-            this.createNewFile(lexiconFileName);
-            this.createNewFile(lexiconArrayFileName);
-            this.createNewFile(postingsFileName);
+    protected void writeIndex(String indexFilePath, boolean createNewFiles, int numberOfDocuments)
+            throws IOException {
+        // terms are kept unordered while indexing, so they are sorted (and merged) once here,
+        // together with any runs that were spilled to disk.
+        List<PostingsRunFile.Reader> runReaders = new ArrayList<>();
+        List<Iterator<Map.Entry<String, PostingsBuffer>>> sources = new ArrayList<>();
+        for (PostingsRunFile run : this.runs) {
+            PostingsRunFile.Reader reader = run.reader();
+            runReaders.add(reader);
+            sources.add(reader);
         }
+        sources.add(this.h.sortedTermPostings());
+        Iterator<Map.Entry<String, PostingsBuffer>> sortedTerms = sources.size() == 1
+                ? sources.get(0) : new SortedTermsMerger<>(sources, PostingsBuffer::concat);
 
-        FileOutputStream postingsFileFOS = new FileOutputStream(postingsFileName, true);
-        FileOutputStream laFOS = new FileOutputStream(lexiconArrayFileName, true);
-
-        PostingComparator postingComparator = new PostingComparator();
-        int offsetPostingList = 0;
-        int offsetLexiconTerm = 0;
-        EngineIndexPB.LexiconArray.Builder lexiconArrayBuilder = EngineIndexPB.LexiconArray.newBuilder();
-
-        FileWriter fw = new FileWriter(lexiconFileName, false);
-        BufferedWriter bw = new BufferedWriter(fw);
-        PrintWriter lexiconPw = new PrintWriter(bw);
+        SegmentWriter segmentWriter = new SegmentWriter(indexFilePath, createNewFiles, this.postingsFormat,
+                this.impactBits, numberOfDocuments);
 
         // For each term, insert the term in the lexicon file, the term's postingList in the postings file
         // and add a record with the offsets in the Lexicon Array.
-        for (String term : sortedTerms) {
-            List<PostingPos> postingListIndex = this.h.get(term);
-            EngineIndexPB.PostingList.Builder postingListB = EngineIndexPB.PostingList.newBuilder();
-            List<EngineIndexPB.PostingList.Posting> postingList = new ArrayList<>();
-
-            // iterate every posting, compute the weight based on the norm and add it to the protobuf postingList.
-            for (PostingPos posting : postingListIndex) {
-                double weight = (1 + Math.log10(posting.getTermFrequency()))
-                        / this.getNorm(posting.getDocId());
-                postingList.add(
-                        EngineIndexPB.PostingList.Posting.newBuilder()
-                        .addAllTermPositions(posting.getTermPositionList())
-                        .setDocId(posting.getDocId())
-                        .setWeight(weight).build()
-                );
-            }
-
-            int df = postingList.size();
-
-            // DESC sort based on weight
-            postingList.sort(postingComparator);
-            EngineIndexPB.PostingList postingListBuilded = postingListB.addAllPostings(postingList).build();
-
-            // release resources
-            postingList = Collections.emptyList();
-            // get the size of the postingList
-            int msgSize = postingListBuilded.getSerializedSize();
-
-            // encode posting lists bytes length with vb
-            byte[] vbSizeOfMessage = VariableByteEncoding.encode(msgSize);
-
-            // add the length of the posting list to the postings and then the list itself.
-            postingsFileFOS.write(vbSizeOfMessage);
-            postingListBuilded.writeTo(postingsFileFOS);
-
-            // construct a lexicon array record
-            EngineIndexPB.LexiconArrayItem.Builder termArrRecord = EngineIndexPB.LexiconArrayItem.newBuilder();
-            termArrRecord.setDocFrequency(df);
-            termArrRecord.setPostingOffset(offsetPostingList);
-            termArrRecord.setTermOffset(offsetLexiconTerm);
-            // add the record to array
-            lexiconArrayBuilder.addLexiconItem(termArrRecord.build());
-
-            // add the string term with the delimiter in the lexicon's file
-            lexiconPw.print(term + LEXICON_TERM_DELIMITER);
-
-            // update the offsets
-            offsetPostingList += (vbSizeOfMessage.length + msgSize);
-            offsetLexiconTerm += (LEX_TERM_DELIMITER_LENGTH + term.length());
+        while (sortedTerms.hasNext()) {
+            Map.Entry<String, PostingsBuffer> termPostings = sortedTerms.next();
+            segmentWriter.addTerm(termPostings.getKey(), this.toTermPostings(termPostings.getValue()));
         }
+        segmentWriter.close();
 
-        // create and save lexicon array, and keep it in memory.
-        EngineIndexPB.LexiconArray lexiconArray = lexiconArrayBuilder.build();
-        lexiconArray.writeTo(laFOS);
-        this.lexiconArray.setLexiconArray(lexiconArray);
-
-        // flush and release resources.
-        laFOS.close();
-        postingsFileFOS.close();
-        lexiconPw.flush();
-        lexiconPw.close();
-        this.h = Collections.emptyMap();
-    }
-
-
-    protected void loadLexiconArray(String filePath) throws IOException {
-        this.lexiconArray.load(filePath);
-    }
-
-    private class PostingComparator implements Comparator<EngineIndexPB.PostingList.Posting> {
-
-        @Override
-        public int compare(EngineIndexPB.PostingList.Posting o1, EngineIndexPB.PostingList.Posting o2) {
-            if (o1.getWeight() > o2.getWeight()) {
-                return -1;
-            } else if (o1.getWeight() < o2.getWeight()) {
-                return 1;
-            } else {
-                return 0;
-            }
-        }
-    }
-
-    public static class PostingPos implements IPosting, Comparable<PostingPos> {
-        private int docId;
-        private List<Integer> termPositions;
-
-        public PostingPos(int docId) {
-            this.docId = docId;
-            this.termPositions = new Vector<>();
-        }
-
-        public int getDocId() {
-            return docId;
-        }
-
-        public int getTermFrequency() {
-            return termPositions.size();
+        // the weights of the formats other than protobuf are computed from the norms when the postings are read,
+        // or when the segment is merged if the postings have quantized weights.
+        String normsFileName = indexFilePath + "\\" + EngineUtils.NORMS_FILE_NAME;
+        if (this.postingsFormat != PostingsFormat.PROTOBUF) {
+            DocNorms.of(this.docNorms).save(normsFileName);
+        } else {
+            new File(normsFileName).delete();
         }
 
-        public void addTermPosition(int pos) {
-            termPositions.add(pos);
-        }
+        // release resources.
+        this.h.clear();
+        this.docNorms.clear();
+        this.estimatedMemory.set(0);
 
-        public List<Integer> getTermPositionList() {
-            return this.termPositions;
+        // the runs are merged in the index files, so they are not needed anymore.
+        for (PostingsRunFile.Reader reader : runReaders) {
+            reader.close();
         }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            PostingPos postingPos = (PostingPos) o;
-
-            return docId == postingPos.getDocId();
+        for (PostingsRunFile run : this.runs) {
+            run.delete();
         }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(docId);
-        }
-
-        @Override
-        public int compareTo(PostingPos o) {
-            if (this.getDocId() > o.getDocId()) {
-                return 1;
-            } else if (this.getDocId() < o.getDocId()) {
-                return -1;
-            } else {
-                return 0;
-            }
-        }
-
+        this.runs = new ArrayList<>();
     }
 }
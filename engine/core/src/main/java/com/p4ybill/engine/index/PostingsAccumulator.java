@@ -0,0 +1,47 @@
+package com.p4ybill.engine.index;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * In-memory structure that collects the postings of the documents while indexing,
+ * until they are written to disk by {@link PositionalIndex#writeIndex(String, boolean, int)}.
+ * Implementations have to be thread safe for the inserting methods.
+ */
+interface PostingsAccumulator {
+
+    /**
+     * Indexes a single term occurrence. The position is added to the document at the tail of the term's
+     * posting list, so the occurrences of a term in a document must not be interleaved with another document.
+     *
+     * @param termId identifier of the term in the {@link TermDictionary}.
+     * @param docId integer identifier of the doc.
+     * @param pos   integer term's position in the document
+     * @return approximate heap bytes that were allocated.
+     */
+    long insert(int termId, int docId, int pos);
+
+    /**
+     * Appends the posting of a whole document to the posting list of the term.
+     *
+     * @param termId    identifier of the term in the {@link TermDictionary}.
+     * @param docId     integer identifier of the doc.
+     * @param positions array containing the positions of the term in the document.
+     * @param from      index of the first position in the array.
+     * @param len       number of positions.
+     * @return approximate heap bytes that were allocated.
+     */
+    long add(int termId, int docId, int[] positions, int from, int len);
+
+    /**
+     * Must not be called while documents are still being inserted.
+     *
+     * @return iterator over the terms with postings in ascending order, each one with its whole posting list.
+     */
+    Iterator<Map.Entry<String, PostingsBuffer>> sortedTermPostings();
+
+    /**
+     * Releases all the postings.
+     */
+    void clear();
+}
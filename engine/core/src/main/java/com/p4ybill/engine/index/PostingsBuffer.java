@@ -0,0 +1,172 @@
+package com.p4ybill.engine.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable, in-memory posting list of a term, backed by primitive int arrays.
+ * Documents are appended one after the other, so the document that is currently indexed is always the tail
+ * and adding a posting or a position never has to search the list.
+ * The positions of all documents are kept in one array, in the order of the documents.
+ *
+ * Not thread safe, the owner has to synchronize the access.
+ */
+final class PostingsBuffer {
+    private static final int INITIAL_DOCS_CAPACITY = 2;
+    private static final int INITIAL_POSITIONS_CAPACITY = 4;
+    // size of an empty buffer: the object, the three arrays and the counters.
+    private static final int SHALLOW_SIZE = 16 + 3 * 16 + 12;
+    // a slot of the int keyed map of the postings, for the key and the reference.
+    private static final int TERM_ENTRY_OVERHEAD = 2 * 8;
+
+    private int[] docIds;
+    private int[] freqs;
+    private int docCount;
+    private int[] positions;
+    private int positionCount;
+
+    PostingsBuffer() {
+        this.docIds = new int[INITIAL_DOCS_CAPACITY];
+        this.freqs = new int[INITIAL_DOCS_CAPACITY];
+        this.positions = new int[INITIAL_POSITIONS_CAPACITY];
+    }
+
+    /**
+     * Appends the posting of a document.
+     *
+     * @param docId     identifier of the document.
+     * @param positions array containing the term positions in the document.
+     * @param from      index of the first position in the array.
+     * @param len       number of positions, which is the term frequency in the document.
+     * @return the number of bytes that the buffer grew.
+     */
+    long addDocument(int docId, int[] positions, int from, int len) {
+        long before = this.memoryBytes();
+        this.ensureDocsCapacity(this.docCount + 1);
+        this.ensurePositionsCapacity(this.positionCount + len);
+
+        this.docIds[this.docCount] = docId;
+        this.freqs[this.docCount] = len;
+        this.docCount++;
+        System.arraycopy(positions, from, this.positions, this.positionCount, len);
+        this.positionCount += len;
+
+        return this.memoryBytes() - before;
+    }
+
+    /**
+     * Adds a position to the document at the tail, or appends a new document if the tail is another document.
+     *
+     * @param docId identifier of the document.
+     * @param pos   the term position in the document.
+     * @return the number of bytes that the buffer grew.
+     */
+    long addPosition(int docId, int pos) {
+        if (this.docCount == 0 || this.docIds[this.docCount - 1] != docId) {
+            return this.addDocument(docId, new int[]{pos}, 0, 1);
+        }
+
+        long before = this.memoryBytes();
+        this.ensurePositionsCapacity(this.positionCount + 1);
+        this.positions[this.positionCount++] = pos;
+        this.freqs[this.docCount - 1]++;
+
+        return this.memoryBytes() - before;
+    }
+
+    /**
+     * Appends all the postings of another buffer after the postings of this one.
+     *
+     * @param other the buffer to append.
+     */
+    void addAll(PostingsBuffer other) {
+        this.ensureDocsCapacity(this.docCount + other.docCount);
+        this.ensurePositionsCapacity(this.positionCount + other.positionCount);
+
+        System.arraycopy(other.docIds, 0, this.docIds, this.docCount, other.docCount);
+        System.arraycopy(other.freqs, 0, this.freqs, this.docCount, other.docCount);
+        System.arraycopy(other.positions, 0, this.positions, this.positionCount, other.positionCount);
+        this.docCount += other.docCount;
+        this.positionCount += other.positionCount;
+    }
+
+    /**
+     * @param buffers the buffers to concatenate, they are not modified.
+     * @return a new buffer with the postings of all the buffers, in the order of the buffers.
+     */
+    static PostingsBuffer concat(List<PostingsBuffer> buffers) {
+        PostingsBuffer merged = new PostingsBuffer();
+        for (PostingsBuffer buffer : buffers) {
+            merged.addAll(buffer);
+        }
+
+        return merged;
+    }
+
+    /**
+     * @return the number of documents, which is the document frequency of the term.
+     */
+    int size() {
+        return this.docCount;
+    }
+
+    int getDocId(int index) {
+        return this.docIds[index];
+    }
+
+    int getTermFrequency(int index) {
+        return this.freqs[index];
+    }
+
+    /**
+     * @return the array with the positions of all the documents. The positions of the document at index i
+     * start after the positions of the documents before it, see {@link #positionOffsets()}.
+     */
+    int[] getPositions() {
+        return this.positions;
+    }
+
+    /**
+     * @return for each document, the index in {@link #getPositions()} where its positions start.
+     */
+    int[] positionOffsets() {
+        int[] offsets = new int[this.docCount];
+        int offset = 0;
+        for (int i = 0; i < this.docCount; i++) {
+            offsets[i] = offset;
+            offset += this.freqs[i];
+        }
+
+        return offsets;
+    }
+
+    /**
+     * @return approximate heap bytes used by the buffer.
+     */
+    long memoryBytes() {
+        return SHALLOW_SIZE + 4L * (this.docIds.length + this.freqs.length + this.positions.length);
+    }
+
+    /**
+     * @return approximate heap bytes of a new entry in a term identifier to buffer map, plus an empty buffer.
+     */
+    static long newTermMemoryBytes() {
+        return TERM_ENTRY_OVERHEAD + SHALLOW_SIZE
+                + 4L * (2 * INITIAL_DOCS_CAPACITY + INITIAL_POSITIONS_CAPACITY);
+    }
+
+    private void ensureDocsCapacity(int minCapacity) {
+        if (minCapacity > this.docIds.length) {
+            int newCapacity = Math.max(minCapacity, this.docIds.length + (this.docIds.length >> 1));
+            this.docIds = Arrays.copyOf(this.docIds, newCapacity);
+            this.freqs = Arrays.copyOf(this.freqs, newCapacity);
+        }
+    }
+
+    private void ensurePositionsCapacity(int minCapacity) {
+        if (minCapacity > this.positions.length) {
+            int newCapacity = Math.max(minCapacity, this.positions.length + (this.positions.length >> 1));
+            this.positions = Arrays.copyOf(this.positions, newCapacity);
+        }
+    }
+}
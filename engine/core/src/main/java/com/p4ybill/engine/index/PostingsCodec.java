@@ -0,0 +1,67 @@
+package com.p4ybill.engine.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the posting list of a term in the postings file. The postings file keeps the length
+ * of each encoded posting list before it, so a codec only deals with the bytes of one list.
+ * A codec can keep the positions of the list apart, in the positions file, which is then read only by the queries
+ * that need the positions.
+ */
+interface PostingsCodec {
+    /**
+     * @param postings the posting list of a term.
+     * @return the encoded posting list, without the positions if they are kept apart.
+     * @throws IOException
+     */
+    byte[] encode(TermPostings postings) throws IOException;
+
+    /**
+     * @param bytes     the bytes of a posting list that was encoded by this codec, from the position to the limit
+     *                  of the buffer. The buffer can be a view of a mapped file, the bytes are decoded without a copy.
+     * @param positions the bytes of the positions of the list that were encoded by {@link #encodePositions},
+     *                  null to read the list without positions. Not used if the positions are not kept apart.
+     * @param norms     the norms of the documents of the segment, null if the segment has none.
+     * @return the decoded posting list, sorted by document identifier.
+     * @throws IOException
+     */
+    TermPostings decode(ByteBuffer bytes, ByteBuffer positions, DocNorms norms) throws IOException;
+
+    /**
+     * @param bytes the bytes of a posting list that was encoded by this codec, like in {@link #decode}.
+     * @param norms the norms of the documents of the segment, null if the segment has none.
+     * @return a cursor over the postings of the list, without their positions. The codecs that keep no skip entries
+     * decode the whole list.
+     * @throws IOException
+     */
+    default PostingsCursor cursor(ByteBuffer bytes, DocNorms norms) throws IOException {
+        return new TermPostingsCursor(this.decode(bytes, null, norms));
+    }
+
+    /**
+     * @return true if the positions are encoded apart from the posting list, in the positions file.
+     */
+    default boolean hasSeparatePositions() {
+        return false;
+    }
+
+    /**
+     * @param postings the posting list of a term, with positions.
+     * @return the encoded positions of the posting list, no bytes if the positions are not kept apart,
+     * they are already encoded by {@link #encode}.
+     * @throws IOException
+     */
+    default byte[] encodePositions(TermPostings postings) throws IOException {
+        return new byte[0];
+    }
+
+    /**
+     * @param quantizer the quantizer of the weights of the postings.
+     * @return a codec of the same format that stores the weights quantized, this codec if the format keeps
+     * the weights in full precision.
+     */
+    default PostingsCodec withImpacts(ImpactQuantizer quantizer) {
+        return this;
+    }
+}
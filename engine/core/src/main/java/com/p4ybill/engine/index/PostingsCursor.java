@@ -0,0 +1,65 @@
+package com.p4ybill.engine.index;
+
+/**
+ * Iterates the postings of a term in ascending order of document identifier, without decoding the whole posting list
+ * when its format keeps skip entries. {@link #advance(int)} jumps over the blocks that end before the target
+ * and {@link #advanceShallow(int)} gives the greatest weight of the block of a document without decoding it,
+ * so the intersections and the top-k searches can skip the postings that cannot change their result.
+ *
+ * A cursor starts before its first posting, and it can only move forward.
+ */
+public interface PostingsCursor {
+    /**
+     * The document identifier of an exhausted cursor, greater than every identifier.
+     */
+    int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     * @return the document identifier of the current posting, -1 before the first posting and
+     * {@link #NO_MORE_DOCS} after the last one.
+     */
+    int docId();
+
+    /**
+     * @return the document identifier of the next posting, {@link #NO_MORE_DOCS} if there is none.
+     */
+    int nextDoc();
+
+    /**
+     * @param target a document identifier.
+     * @return the first document identifier of the postings that is not less than the target, starting from
+     * the current posting, {@link #NO_MORE_DOCS} if there is none.
+     */
+    int advance(int target);
+
+    /**
+     * @return the weight of the term in the document of the current posting.
+     */
+    double weight();
+
+    /**
+     * @return the number of postings, which is the document frequency of the term. The cursors that skip
+     * the deleted documents count them too.
+     */
+    int cost();
+
+    /**
+     * @return the greatest weight of the postings.
+     */
+    double maxWeight();
+
+    /**
+     * Moves to the block of the postings that would hold the target, without decoding it and without moving
+     * the current posting. The targets of the calls must not decrease.
+     *
+     * @param target a document identifier, not less than the current one.
+     * @return the last document identifier of the block, {@link #NO_MORE_DOCS} if every posting is before the target.
+     */
+    int advanceShallow(int target);
+
+    /**
+     * @return the greatest weight of the postings of the block of the last {@link #advanceShallow(int)},
+     * 0 if every posting was before its target.
+     */
+    double blockMaxWeight();
+}
@@ -0,0 +1,82 @@
+package com.p4ybill.engine.index;
+
+/**
+ * The way the posting lists of a segment are encoded in its postings file.
+ * Each segment keeps the format it was written with in its metadata, so segments of different formats can be searched
+ * together.
+ */
+public enum PostingsFormat {
+    /**
+     * A protobuf PostingList message per term, with the document identifier, the weight and the positions of each
+     * posting. The format of the indexes that have no format in their metadata.
+     */
+    PROTOBUF(0, new ProtobufPostingsCodec()),
+    /**
+     * The gaps between the sorted document identifiers, the term frequencies and the gaps between the positions
+     * in variable bytes. The weights are computed from the term frequencies and the norms of the documents
+     * when the posting list is read.
+     */
+    VBYTE(1, new VBytePostingsCodec(false)),
+    /**
+     * The {@link #VBYTE} format with the positions apart, in the positions file, so the queries that do not
+     * need the positions do not read them.
+     */
+    VBYTE_SPLIT(2, new VBytePostingsCodec(true)),
+    /**
+     * The {@link #VBYTE_SPLIT} format in blocks, with a skip entry per block that has its last document identifier,
+     * its length and its greatest weight, so the intersections and the top-k searches skip the blocks
+     * they do not need.
+     */
+    VBYTE_BLOCKS(3, new BlockPostingsCodec(false)),
+    /**
+     * The {@link #VBYTE_BLOCKS} format with the document identifier gaps and the term frequencies of the full blocks
+     * bit packed with the bits of their greatest value, so the long posting lists are decoded a block at a time
+     * with vector operations, see {@link BitPacking}.
+     */
+    PACKED_BLOCKS(4, new BlockPostingsCodec(true));
+
+    private final int id;
+    private final PostingsCodec codec;
+
+    PostingsFormat(int id, PostingsCodec codec) {
+        this.id = id;
+        this.codec = codec;
+    }
+
+    /**
+     * @return the identifier of the format in the metadata of a segment.
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    PostingsCodec codec() {
+        return this.codec;
+    }
+
+    /**
+     * @param impactBits the bits of the quantized weights of the postings, 0 for the weights in full precision.
+     * @return the codec of the format with the weights quantized. The protobuf format keeps its weights
+     * in full precision.
+     */
+    PostingsCodec codec(int impactBits) {
+        return impactBits == 0 ? this.codec : this.codec.withImpacts(ImpactQuantizer.of(impactBits));
+    }
+
+    /**
+     * @param id the identifier in the metadata of a segment, null if the segment has none.
+     * @return the format with the identifier.
+     */
+    static PostingsFormat fromId(Integer id) {
+        if (id == null) {
+            return PROTOBUF;
+        }
+        for (PostingsFormat format : values()) {
+            if (format.id == id) {
+                return format;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown postings format " + id);
+    }
+}
@@ -0,0 +1,120 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.store.EngineIndexPB;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A sorted partial index (run) that is spilled to disk when the in-memory postings exceed the memory budget.
+ * The run is a sequence of delimited {@link EngineIndexPB.TermPostingsRun} messages in ascending term order.
+ */
+final class PostingsRunFile {
+    private final File file;
+
+    PostingsRunFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Writes the given sorted term postings to the run file.
+     *
+     * @param sortedTerms terms in ascending order, each one with its posting list.
+     * @throws IOException
+     */
+    void write(Iterator<Map.Entry<String, PostingsBuffer>> sortedTerms) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(this.file))) {
+            while (sortedTerms.hasNext()) {
+                Map.Entry<String, PostingsBuffer> termPostings = sortedTerms.next();
+                EngineIndexPB.TermPostingsRun.Builder record = EngineIndexPB.TermPostingsRun.newBuilder()
+                        .setTerm(termPostings.getKey());
+
+                PostingsBuffer postings = termPostings.getValue();
+                int[] positions = postings.getPositions();
+                int positionIndex = 0;
+                for (int i = 0; i < postings.size(); i++) {
+                    EngineIndexPB.PostingList.Posting.Builder posting = EngineIndexPB.PostingList.Posting.newBuilder()
+                            .setDocId(postings.getDocId(i));
+                    for (int end = positionIndex + postings.getTermFrequency(i); positionIndex < end; positionIndex++) {
+                        posting.addTermPositions(positions[positionIndex]);
+                    }
+                    record.addPostings(posting);
+                }
+
+                record.build().writeDelimitedTo(os);
+            }
+        }
+    }
+
+    /**
+     * @return a reader that streams the records of the run, without loading the whole run in memory.
+     * @throws IOException
+     */
+    Reader reader() throws IOException {
+        return new Reader(new BufferedInputStream(new FileInputStream(this.file)));
+    }
+
+    /**
+     * Deletes the run file.
+     */
+    void delete() {
+        this.file.delete();
+    }
+
+    static final class Reader implements Iterator<Map.Entry<String, PostingsBuffer>>, Closeable {
+        private final InputStream is;
+        private EngineIndexPB.TermPostingsRun next;
+
+        private Reader(InputStream is) throws IOException {
+            this.is = is;
+            this.readNext();
+        }
+
+        private void readNext() throws IOException {
+            this.next = EngineIndexPB.TermPostingsRun.parseDelimitedFrom(this.is);
+            // EOF
+            if (this.next == null) {
+                this.close();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<String, PostingsBuffer> next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+
+            EngineIndexPB.TermPostingsRun record = this.next;
+            PostingsBuffer postings = new PostingsBuffer();
+            int[] positions = new int[0];
+            for (EngineIndexPB.PostingList.Posting p : record.getPostingsList()) {
+                int tf = p.getTermPositionsCount();
+                if (positions.length < tf) {
+                    positions = new int[tf];
+                }
+                for (int i = 0; i < tf; i++) {
+                    positions[i] = p.getTermPositions(i);
+                }
+                postings.addDocument(p.getDocId(), positions, 0, tf);
+            }
+
+            try {
+                this.readNext();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return Map.entry(record.getTerm(), postings);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.is.close();
+        }
+    }
+}
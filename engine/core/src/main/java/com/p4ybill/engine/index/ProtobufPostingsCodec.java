@@ -0,0 +1,69 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.store.EngineIndexPB;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The {@link PostingsFormat#PROTOBUF} codec. The postings are stored sorted by weight in descending order,
+ * with their weights, so the norms are not needed to decode them. The positions are in the postings.
+ */
+final class ProtobufPostingsCodec implements PostingsCodec {
+    private static final Comparator<EngineIndexPB.PostingList.Posting> WEIGHT_DESC =
+            Comparator.comparingDouble(EngineIndexPB.PostingList.Posting::getWeight).reversed();
+
+    @Override
+    public byte[] encode(TermPostings postings) {
+        List<EngineIndexPB.PostingList.Posting> postingList = new ArrayList<>(postings.size());
+        for (int i = 0; i < postings.size(); i++) {
+            EngineIndexPB.PostingList.Posting.Builder posting = EngineIndexPB.PostingList.Posting.newBuilder()
+                    .setDocId(postings.getDocId(i))
+                    .setWeight(postings.getWeight(i));
+            for (int position : postings.getTermPositions(i)) {
+                posting.addTermPositions(position);
+            }
+            postingList.add(posting.build());
+        }
+
+        // DESC sort based on weight
+        postingList.sort(WEIGHT_DESC);
+        return EngineIndexPB.PostingList.newBuilder().addAllPostings(postingList).build().toByteArray();
+    }
+
+    @Override
+    public TermPostings decode(ByteBuffer bytes, ByteBuffer positions, DocNorms norms) throws IOException {
+        List<EngineIndexPB.PostingList.Posting> postingList = EngineIndexPB.PostingList.parseFrom(bytes).getPostingsList();
+        int size = postingList.size();
+
+        // sort the indexes of the postings by document identifier, each identifier is in a posting once.
+        long[] order = new long[size];
+        int positionCount = 0;
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) postingList.get(i).getDocId() << 32) | i;
+            positionCount += postingList.get(i).getTermPositionsCount();
+        }
+        Arrays.sort(order);
+
+        int[] docIds = new int[size];
+        int[] termFrequencies = new int[size];
+        double[] weights = new double[size];
+        int[] termPositions = new int[positionCount];
+        int p = 0;
+        for (int j = 0; j < size; j++) {
+            EngineIndexPB.PostingList.Posting posting = postingList.get((int) order[j]);
+            docIds[j] = posting.getDocId();
+            termFrequencies[j] = posting.getTermPositionsCount();
+            weights[j] = posting.getWeight();
+            for (int k = 0; k < termFrequencies[j]; k++) {
+                termPositions[p++] = posting.getTermPositions(k);
+            }
+        }
+
+        return new TermPostings(size, docIds, termFrequencies, weights, termPositions);
+    }
+}
@@ -0,0 +1,98 @@
+package com.p4ybill.engine.index;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The header at the start of the postings file of a segment, with a magic number, the version of the index format,
+ * the postings format and the impact bits of the codec of the posting lists, and the number of documents.
+ * The posting lists start right after it, and their offsets in the lexicon array are 64 bits.
+ *
+ * The segments that were written before the header have their first posting list at the start of the postings file,
+ * and their codec and number of documents only in their metadata. The magic number cannot be the start of such a file:
+ * its bytes would be the variable byte length of a first posting list of more than 2GB, which the offsets of that
+ * format could not address.
+ */
+final class SegmentHeader {
+    // "P4YI"
+    static final int MAGIC = 0x50345949;
+    static final int VERSION = 1;
+    // the magic number, the version, the postings format, the impact bits and the number of documents.
+    static final int LENGTH = 5 * 4;
+
+    private final int version;
+    private final PostingsFormat postingsFormat;
+    private final int impactBits;
+    private final int numberOfDocuments;
+
+    /**
+     * @param postingsFormat    the format of the posting lists.
+     * @param impactBits        the bits of the quantized weights of the postings, 0 for none.
+     * @param numberOfDocuments the number of documents of the segment.
+     */
+    SegmentHeader(PostingsFormat postingsFormat, int impactBits, int numberOfDocuments) {
+        this(VERSION, postingsFormat, impactBits, numberOfDocuments);
+    }
+
+    private SegmentHeader(int version, PostingsFormat postingsFormat, int impactBits, int numberOfDocuments) {
+        this.version = version;
+        this.postingsFormat = postingsFormat;
+        this.impactBits = impactBits;
+        this.numberOfDocuments = numberOfDocuments;
+    }
+
+    /**
+     * @param postingsFile the mapped postings file of a segment.
+     * @return the header of the file, null if the file was written before the header.
+     * @throws IOException if the file was written by a newer version of the format.
+     */
+    static SegmentHeader read(MappedIndexFile postingsFile) throws IOException {
+        if (postingsFile.length() < LENGTH) {
+            return null;
+        }
+
+        ByteBuffer buf = postingsFile.slice(0, LENGTH);
+        if (buf.getInt() != MAGIC) {
+            return null;
+        }
+        int version = buf.getInt();
+        if (version > VERSION) {
+            throw new IOException("The index format version " + version + " is newer than the supported version "
+                    + VERSION);
+        }
+
+        return new SegmentHeader(version, PostingsFormat.fromId(buf.getInt()), buf.getInt(), buf.getInt());
+    }
+
+    /**
+     * @param os the postings file, at its start.
+     * @throws IOException
+     */
+    void write(OutputStream os) throws IOException {
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(MAGIC);
+        dos.writeInt(this.version);
+        dos.writeInt(this.postingsFormat.getId());
+        dos.writeInt(this.impactBits);
+        dos.writeInt(this.numberOfDocuments);
+        dos.flush();
+    }
+
+    int getVersion() {
+        return this.version;
+    }
+
+    PostingsFormat getPostingsFormat() {
+        return this.postingsFormat;
+    }
+
+    int getImpactBits() {
+        return this.impactBits;
+    }
+
+    int getNumberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+}
@@ -0,0 +1,115 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.utils.EngineUtils;
+import com.p4ybill.engine.utils.VariableByteEncoding;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Reads the terms of a segment with their posting lists sequentially, in the ascending order of the lexicon,
+ * reading the lexicon and the postings files once from start to end. Only the posting list of the current term
+ * is kept in memory. The document identifiers of the postings can be changed on the way, and postings can be dropped.
+ * The positions file of the formats that keep the positions apart is read alongside the postings file.
+ */
+final class SegmentTermReader implements Iterator<Map.Entry<String, TermPostings>>, Closeable {
+    private final IndexSegment segment;
+    private final LexiconReader lexicon;
+    private final DataInputStream postings;
+    // null if the positions are in the postings.
+    private final DataInputStream positions;
+    private final IntUnaryOperator docIdMap;
+    private Map.Entry<String, TermPostings> next;
+
+    /**
+     * @param segment  the segment to read.
+     * @param docIdMap gives the new identifier of each document, or -1 to drop the postings of the document.
+     *                 The terms that have no posting left are skipped.
+     * @throws IOException
+     */
+    SegmentTermReader(IndexSegment segment, IntUnaryOperator docIdMap) throws IOException {
+        this.segment = segment;
+        this.lexicon = segment.openLexicon();
+        this.postings = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(segment.getFilePath(EngineUtils.POSTINGS_FILE_NAME))));
+        // the header of the postings file.
+        this.postings.readFully(new byte[(int) segment.getPostingsStart()]);
+        this.positions = segment.hasSeparatePositions() ? new DataInputStream(new BufferedInputStream(
+                new FileInputStream(segment.getFilePath(EngineUtils.POSITIONS_FILE_NAME)))) : null;
+        this.docIdMap = docIdMap;
+        this.next = this.readNext();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    @Override
+    public Map.Entry<String, TermPostings> next() {
+        if (this.next == null) {
+            throw new NoSuchElementException();
+        }
+
+        Map.Entry<String, TermPostings> current = this.next;
+        try {
+            this.next = this.readNext();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return current;
+    }
+
+    /**
+     * @return the next term that has postings left after the identifiers are mapped, null at the end of the segment.
+     */
+    private Map.Entry<String, TermPostings> readNext() throws IOException {
+        String term;
+        while ((term = this.lexicon.next()) != null) {
+            byte[] msg = this.readList(this.postings);
+            byte[] positionsMsg = this.positions != null ? this.readList(this.positions) : null;
+
+            TermPostings postingList = this.segment.decode(ByteBuffer.wrap(msg),
+                    positionsMsg != null ? ByteBuffer.wrap(positionsMsg) : null);
+            if (this.segment.hasQuantizedImpacts()) {
+                // the weights are written again in full precision, or quantized with the scale of the new list.
+                postingList = postingList.withWeights(this.segment.getNorms());
+            }
+            postingList = postingList.mapDocIds(this.docIdMap);
+            if (postingList.size() > 0) {
+                return Map.entry(term, postingList);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the next list of the postings or the positions file, which is written after its length.
+     */
+    private byte[] readList(DataInputStream is) throws IOException {
+        int msgSize = VariableByteEncoding.decode(is);
+        byte[] msg = new byte[msgSize];
+        is.readFully(msg);
+
+        return msg;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.lexicon.close();
+        this.postings.close();
+        if (this.positions != null) {
+            this.positions.close();
+        }
+    }
+}
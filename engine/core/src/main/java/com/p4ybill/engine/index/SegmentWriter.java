@@ -0,0 +1,160 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.store.EngineIndexPB;
+import com.p4ybill.engine.utils.EngineUtils;
+import com.p4ybill.engine.utils.VariableByteEncoding;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the postings, the lexicon, the lexicon index and the lexicon array files of a segment, one term at a time.
+ * The terms have to be added in ascending order, because the lexicon array is searched with binary search.
+ * The posting lists are encoded with the codec of the {@link PostingsFormat} of the segment, and if the codec
+ * keeps the positions apart they are written in the positions file, in the same order as the posting lists.
+ * A new postings file starts with the {@link SegmentHeader} of the segment, and the offsets are 64 bits.
+ */
+final class SegmentWriter implements Closeable {
+    private final PostingsCodec codec;
+    private final OutputStream postingsOs;
+    // null if the positions are in the postings.
+    private final OutputStream positionsOs;
+    private final OutputStream lexiconArrayOs;
+    private final FrontCodedLexicon.Writer lexiconWriter;
+    private final EngineIndexPB.LexiconArray.Builder lexiconArrayBuilder;
+    // the length of a posting list or of its positions in variable bytes, before they are written.
+    private final byte[] lengthBytes = new byte[VariableByteEncoding.MAX_LENGTH];
+    private boolean closed;
+    private long offsetPostingList;
+    private long offsetPositions;
+
+    /**
+     * @param folderPath        the folder of the segment.
+     * @param createNewFiles    true if the files should be overwritten, otherwise the postings, the positions and
+     *                          the lexicon array are appended to.
+     * @param format            the format of the posting lists.
+     * @param impactBits        the bits of the quantized weights of the postings, 0 for none.
+     * @param numberOfDocuments the number of documents of the segment, for its header.
+     * @throws IOException
+     */
+    SegmentWriter(String folderPath, boolean createNewFiles, PostingsFormat format, int impactBits,
+                  int numberOfDocuments) throws IOException {
+        String lexiconFileName = folderPath + "\\" + EngineUtils.LEXICON_FILE_NAME;
+        String lexiconIndexFileName = folderPath + "\\" + EngineUtils.LEXICON_INDEX_FILE_NAME;
+        String lexiconArrayFileName = folderPath + "\\" + EngineUtils.LEXICON_ARRAY;
+        String postingsFileName = folderPath + "\\" + EngineUtils.POSTINGS_FILE_NAME;
+        String positionsFileName = folderPath + "\\" + EngineUtils.POSITIONS_FILE_NAME;
+
+        this.codec = format.codec(impactBits);
+        if (createNewFiles) {
+            this.createNewFile(lexiconFileName);
+            this.createNewFile(lexiconArrayFileName);
+            this.createNewFile(postingsFileName);
+            if (this.codec.hasSeparatePositions()) {
+                this.createNewFile(positionsFileName);
+            } else {
+                // the positions of a previous format.
+                new File(positionsFileName).delete();
+            }
+        }
+
+        this.postingsOs = new BufferedOutputStream(new FileOutputStream(postingsFileName, true));
+        this.positionsOs = this.codec.hasSeparatePositions()
+                ? new BufferedOutputStream(new FileOutputStream(positionsFileName, true)) : null;
+        this.lexiconArrayOs = new FileOutputStream(lexiconArrayFileName, true);
+        this.lexiconWriter = new FrontCodedLexicon.Writer(lexiconFileName, lexiconIndexFileName);
+        this.lexiconArrayBuilder = EngineIndexPB.LexiconArray.newBuilder();
+        // the lists that are appended come after the ones that are in the files.
+        this.offsetPostingList = new File(postingsFileName).length();
+        this.offsetPositions = this.positionsOs != null ? new File(positionsFileName).length() : 0;
+        if (this.offsetPostingList == 0) {
+            new SegmentHeader(format, impactBits, numberOfDocuments).write(this.postingsOs);
+            this.offsetPostingList = SegmentHeader.LENGTH;
+        }
+    }
+
+    /**
+     * Inserts the term in the lexicon file, its posting list in the postings file
+     * and adds a record with the offsets of the posting list in the lexicon array.
+     *
+     * @param term        the term, after the terms that were already added.
+     * @param postingList the posting list of the term, with positions.
+     * @throws IOException
+     */
+    void addTerm(String term, TermPostings postingList) throws IOException {
+        byte[] msg = this.codec.encode(postingList);
+        // get the size of the postingList
+        int msgSize = msg.length;
+
+        // add the length of the posting list in vb to the postings and then the list itself.
+        int vbSizeOfMessage = VariableByteEncoding.encode(msgSize, this.lengthBytes, 0);
+        this.postingsOs.write(this.lengthBytes, 0, vbSizeOfMessage);
+        this.postingsOs.write(msg);
+
+        // construct a lexicon array record
+        EngineIndexPB.LexiconArrayItem.Builder termArrRecord = EngineIndexPB.LexiconArrayItem.newBuilder();
+        termArrRecord.setDocFrequency(postingList.size());
+        termArrRecord.setPostingOffset(this.offsetPostingList);
+        if (this.positionsOs != null) {
+            // the positions are written like the posting list, with their length before them.
+            byte[] positions = this.codec.encodePositions(postingList);
+            int vbSizeOfPositions = VariableByteEncoding.encode(positions.length, this.lengthBytes, 0);
+            this.positionsOs.write(this.lengthBytes, 0, vbSizeOfPositions);
+            this.positionsOs.write(positions);
+
+            termArrRecord.setPositionsOffset(this.offsetPositions);
+            this.offsetPositions += (vbSizeOfPositions + positions.length);
+        }
+        // add the record to array
+        this.lexiconArrayBuilder.addLexiconItem(termArrRecord.build());
+
+        // add the term in the lexicon's file, the lexicon array record of the term has the same index as the term.
+        this.lexiconWriter.add(term);
+
+        // update the offsets
+        this.offsetPostingList += (vbSizeOfMessage + msgSize);
+    }
+
+    /**
+     * Saves the lexicon array and releases the files.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        this.lexiconArrayBuilder.build().writeTo(this.lexiconArrayOs);
+
+        this.lexiconArrayOs.close();
+        this.postingsOs.close();
+        if (this.positionsOs != null) {
+            this.positionsOs.close();
+        }
+        this.lexiconWriter.close();
+    }
+
+    /**
+     * Creates a file in the specified path.
+     *
+     * @param filePath string the filepath of the file.
+     */
+    private void createNewFile(String filePath) {
+        File f = new File(filePath);
+        if (f.exists()) {
+            f.delete();
+        }
+        try {
+            f.createNewFile();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
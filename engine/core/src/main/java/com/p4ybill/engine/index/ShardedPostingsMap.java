@@ -0,0 +1,129 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.utils.IntObjectHashMap;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * In-memory term to postings map that is split into shards based on the identifier of the term.
+ * Each shard has its own lock, so threads that index different terms do not block each other.
+ * Terms are not kept sorted while indexing, sorting is done once by {@link #sortedTermPostings()}.
+ */
+final class ShardedPostingsMap implements PostingsAccumulator {
+    private final TermDictionary dictionary;
+    private final Shard[] shards;
+    private final int shardMask;
+
+    /**
+     * @param dictionary the dictionary that assigns the term identifiers.
+     * @param minShards  the minimum number of shards. It is rounded up to the next power of two.
+     */
+    ShardedPostingsMap(TermDictionary dictionary, int minShards) {
+        int n = Integer.highestOneBit(Math.max(1, minShards - 1)) << 1;
+        this.dictionary = dictionary;
+        this.shards = new Shard[n];
+        this.shardMask = n - 1;
+        for (int i = 0; i < n; i++) {
+            this.shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Creates a map with enough shards for the available processors to rarely collide.
+     */
+    ShardedPostingsMap(TermDictionary dictionary) {
+        this(dictionary, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    private Shard shardFor(int termId) {
+        // identifiers are dense, so consecutive terms go to consecutive shards.
+        return this.shards[termId & this.shardMask];
+    }
+
+    @Override
+    public long insert(int termId, int docId, int pos) {
+        Shard shard = this.shardFor(termId);
+        synchronized (shard) {
+            return shard.ensureTerm(termId) + shard.postings.get(termId).addPosition(docId, pos);
+        }
+    }
+
+    @Override
+    public long add(int termId, int docId, int[] positions, int from, int len) {
+        Shard shard = this.shardFor(termId);
+        synchronized (shard) {
+            return shard.ensureTerm(termId) + shard.postings.get(termId).addDocument(docId, positions, from, len);
+        }
+    }
+
+    /**
+     * @return the posting list of the term or null if the term has no postings.
+     */
+    PostingsBuffer get(int termId) {
+        Shard shard = this.shardFor(termId);
+        synchronized (shard) {
+            return shard.postings.get(termId);
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, PostingsBuffer>> sortedTermPostings() {
+        int[] sortedIds = this.dictionary.sortedIds();
+
+        return new Iterator<>() {
+            private int i = this.skipEmpty(0);
+
+            private int skipEmpty(int from) {
+                while (from < sortedIds.length && get(sortedIds[from]) == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.i < sortedIds.length;
+            }
+
+            @Override
+            public Map.Entry<String, PostingsBuffer> next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int termId = sortedIds[this.i];
+                this.i = this.skipEmpty(this.i + 1);
+
+                return Map.entry(dictionary.getTerm(termId), get(termId));
+            }
+        };
+    }
+
+    @Override
+    public void clear() {
+        for (Shard shard : this.shards) {
+            synchronized (shard) {
+                shard.postings = new IntObjectHashMap<>();
+            }
+        }
+    }
+
+    private static final class Shard {
+        private IntObjectHashMap<PostingsBuffer> postings = new IntObjectHashMap<>();
+
+        /**
+         * Creates the posting list of the term if it does not exist. The caller holds the lock of the shard.
+         *
+         * @return approximate heap bytes that were allocated.
+         */
+        long ensureTerm(int termId) {
+            if (this.postings.get(termId) != null) {
+                return 0;
+            }
+            this.postings.put(termId, new PostingsBuffer());
+
+            return PostingsBuffer.newTermMemoryBytes();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.p4ybill.engine.index;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * K-way merge of sorted term runs. Each run iterates terms in ascending order.
+ * When a term appears in more than one run, its posting lists are combined in a single entry,
+ * with the posting lists given in the order of the runs.
+ *
+ * @param <V> the type of the posting lists.
+ */
+final class SortedTermsMerger<V> implements Iterator<Map.Entry<String, V>> {
+    private final PriorityQueue<RunHead<V>> heads;
+    private final Function<List<V>, V> combiner;
+
+    /**
+     * @param runs     the runs to merge.
+     * @param combiner combines the posting lists of a term that is in more than one run. It must not modify
+     *                 the lists it is given.
+     */
+    SortedTermsMerger(List<? extends Iterator<Map.Entry<String, V>>> runs, Function<List<V>, V> combiner) {
+        this.heads = new PriorityQueue<>(Math.max(1, runs.size()));
+        this.combiner = combiner;
+        for (int i = 0; i < runs.size(); i++) {
+            Iterator<Map.Entry<String, V>> run = runs.get(i);
+            if (run.hasNext()) {
+                this.heads.add(new RunHead<>(run, i));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !this.heads.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<String, V> next() {
+        if (this.heads.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        RunHead<V> head = this.heads.poll();
+        String term = head.current.getKey();
+        V postings = head.current.getValue();
+        this.advance(head);
+
+        // collect the same term from the rest of the runs.
+        List<V> same = null;
+        while (!this.heads.isEmpty() && this.heads.peek().current.getKey().equals(term)) {
+            RunHead<V> sameHead = this.heads.poll();
+            if (same == null) {
+                same = new ArrayList<>();
+                same.add(postings);
+            }
+            same.add(sameHead.current.getValue());
+            this.advance(sameHead);
+        }
+
+        return Map.entry(term, same == null ? postings : this.combiner.apply(same));
+    }
+
+    private void advance(RunHead<V> head) {
+        if (head.run.hasNext()) {
+            head.current = head.run.next();
+            this.heads.add(head);
+        }
+    }
+
+    private static final class RunHead<V> implements Comparable<RunHead<V>> {
+        private final int order;
+        private final Iterator<Map.Entry<String, V>> run;
+        private Map.Entry<String, V> current;
+
+        RunHead(Iterator<Map.Entry<String, V>> run, int order) {
+            this.order = order;
+            this.run = run;
+            this.current = run.next();
+        }
+
+        @Override
+        public int compareTo(RunHead<V> o) {
+            int cmp = this.current.getKey().compareTo(o.current.getKey());
+            return cmp != 0 ? cmp : Integer.compare(this.order, o.order);
+        }
+    }
+}
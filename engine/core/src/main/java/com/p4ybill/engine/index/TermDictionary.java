@@ -0,0 +1,97 @@
+package com.p4ybill.engine.index;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread safe dictionary that assigns a dense integer identifier to each distinct term while indexing,
+ * so that the postings are kept in int keyed structures and each term string is stored once.
+ * Identifiers are given in the order the terms are first seen, {@link #sortedIds()} gives the term order.
+ * The dictionary is kept when the postings are spilled to disk, it grows with the vocabulary and not with
+ * the number of documents.
+ */
+final class TermDictionary {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    private final Map<String, Integer> ids;
+    // id to term, in chunks so that it grows without copying and without a global lock.
+    private final AtomicReferenceArray<String[]> terms;
+    private final AtomicInteger nextId;
+
+    TermDictionary() {
+        this.ids = new ConcurrentHashMap<>();
+        this.terms = new AtomicReferenceArray<>(MAX_CHUNKS);
+        this.nextId = new AtomicInteger();
+    }
+
+    /**
+     * @param term the term to look up.
+     * @return the identifier of the term. A new identifier is assigned if the term has not been seen before.
+     */
+    int getOrAdd(String term) {
+        Integer id = this.ids.get(term);
+        if (id != null) {
+            return id;
+        }
+
+        return this.ids.computeIfAbsent(term, t -> {
+            int newId = this.nextId.getAndIncrement();
+            this.chunk(newId)[newId & (CHUNK_SIZE - 1)] = t;
+            return newId;
+        });
+    }
+
+    /**
+     * @param id identifier that was returned by {@link #getOrAdd(String)}.
+     * @return the term of the identifier.
+     */
+    String getTerm(int id) {
+        return this.terms.get(id >>> CHUNK_SHIFT)[id & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * @return the number of distinct terms.
+     */
+    int size() {
+        return this.nextId.get();
+    }
+
+    /**
+     * Must not be called while terms are still being added.
+     *
+     * @return all the identifiers in ascending order of their terms.
+     */
+    int[] sortedIds() {
+        int n = this.size();
+        String[] sortedTerms = new String[n];
+        for (int id = 0; id < n; id++) {
+            sortedTerms[id] = this.getTerm(id);
+        }
+        Arrays.sort(sortedTerms);
+
+        int[] sortedIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortedIds[i] = this.ids.get(sortedTerms[i]);
+        }
+        return sortedIds;
+    }
+
+    private String[] chunk(int id) {
+        int chunkIndex = id >>> CHUNK_SHIFT;
+        if (chunkIndex >= MAX_CHUNKS) {
+            throw new IllegalStateException("Too many distinct terms: " + id);
+        }
+
+        String[] chunk = this.terms.get(chunkIndex);
+        if (chunk == null) {
+            this.terms.compareAndSet(chunkIndex, null, new String[CHUNK_SIZE]);
+            chunk = this.terms.get(chunkIndex);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,97 @@
+package com.p4ybill.engine.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The terms of a segment in memory, to find the index of a term in the lexicon without reading the lexicon file.
+ * The UTF-8 bytes of the terms are kept one after the other in one array, and an open addressing hash table
+ * with linear probing keeps the index of each term plus one, 0 for an empty slot. The table has at least
+ * one and a half times as many slots as there are terms, so a term takes its bytes, 4 bytes for its start
+ * and 6 to 12 bytes in the table.
+ */
+final class TermHashTable {
+    private final byte[] termBytes;
+    // the bytes of the term i are from termStarts[i] to termStarts[i + 1].
+    private final int[] termStarts;
+    private final int[] table;
+    private final int mask;
+
+    private TermHashTable(byte[] termBytes, int[] termStarts, int numberOfTerms) {
+        this.termBytes = termBytes;
+        this.termStarts = termStarts;
+
+        int capacity = Integer.highestOneBit(Math.max(2, (numberOfTerms * 3 + 1) / 2) - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < numberOfTerms; i++) {
+            int slot = hash(termBytes, termStarts[i], termStarts[i + 1]) & this.mask;
+            while (this.table[slot] != 0) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * @param lexicon       the terms of the lexicon from the first one, the reader is not closed.
+     * @param numberOfTerms the number of terms of the lexicon.
+     * @return the table of the terms.
+     * @throws IOException if the lexicon has fewer terms, so the terms and the records of the lexicon array
+     *                     do not match.
+     */
+    static TermHashTable build(LexiconReader lexicon, int numberOfTerms) throws IOException {
+        byte[] termBytes = new byte[Math.max(16, numberOfTerms * 8)];
+        int[] termStarts = new int[numberOfTerms + 1];
+        int length = 0;
+        int i = 0;
+        String term;
+        while (i < numberOfTerms && (term = lexicon.next()) != null) {
+            byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+            if (length + bytes.length > termBytes.length) {
+                termBytes = Arrays.copyOf(termBytes, Math.max(length + bytes.length, termBytes.length * 2));
+            }
+            System.arraycopy(bytes, 0, termBytes, length, bytes.length);
+            length += bytes.length;
+            termStarts[++i] = length;
+        }
+        if (i < numberOfTerms) {
+            throw new IOException("The lexicon has " + i + " terms, the lexicon array has " + numberOfTerms
+                    + " records");
+        }
+
+        return new TermHashTable(Arrays.copyOf(termBytes, length), termStarts, numberOfTerms);
+    }
+
+    /**
+     * @param term the term to look up.
+     * @return the index of the term in the lexicon, -1 if the term is not in the lexicon.
+     */
+    int find(String term) {
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        int slot = hash(bytes, 0, bytes.length) & this.mask;
+        int entry;
+        while ((entry = this.table[slot]) != 0) {
+            int i = entry - 1;
+            if (Arrays.equals(this.termBytes, this.termStarts[i], this.termStarts[i + 1], bytes, 0, bytes.length)) {
+                return i;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * FNV-1a with the high bits mixed into the low bits, which pick the slot.
+     */
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ bytes[i]) * 0x01000193;
+        }
+
+        return h ^ (h >>> 16);
+    }
+}
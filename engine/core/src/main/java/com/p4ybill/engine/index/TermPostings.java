@@ -0,0 +1,241 @@
+package com.p4ybill.engine.index;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The decoded posting list of a term, backed by primitive arrays and sorted by document identifier.
+ * Each posting has the term frequency and the weight of the term in the document, and its positions
+ * unless the posting list was read without them.
+ *
+ * Immutable.
+ */
+public final class TermPostings {
+    private final int size;
+    private final int[] docIds;
+    private final int[] termFrequencies;
+    private final double[] weights;
+    // the positions of all the documents one after the other, null if they were not read.
+    private final int[] positions;
+    // the positions of the document i start at positionStarts[i] and end at positionStarts[i + 1].
+    private final int[] positionStarts;
+
+    /**
+     * @param size            the number of postings, the arrays can be longer.
+     * @param docIds          the document identifiers in ascending order.
+     * @param termFrequencies the term frequency in each document.
+     * @param weights         the weight of the term in each document.
+     * @param positions       the term positions of each document one after the other, null without positions.
+     */
+    TermPostings(int size, int[] docIds, int[] termFrequencies, double[] weights, int[] positions) {
+        this.size = size;
+        this.docIds = docIds;
+        this.termFrequencies = termFrequencies;
+        this.weights = weights;
+        this.positions = positions;
+        if (positions != null) {
+            this.positionStarts = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                this.positionStarts[i + 1] = this.positionStarts[i] + termFrequencies[i];
+            }
+        } else {
+            this.positionStarts = null;
+        }
+    }
+
+    /**
+     * @return the number of postings, which is the document frequency of the term.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int getDocId(int i) {
+        return this.docIds[i];
+    }
+
+    public int getTermFrequency(int i) {
+        return this.termFrequencies[i];
+    }
+
+    public double getWeight(int i) {
+        return this.weights[i];
+    }
+
+    /**
+     * @return the document identifiers of the postings, for the codecs. The array is not copied,
+     * it can be longer than the number of postings.
+     */
+    int[] docIds() {
+        return this.docIds;
+    }
+
+    /**
+     * @return the term frequencies of the postings, for the codecs. The array is not copied,
+     * it can be longer than the number of postings.
+     */
+    int[] termFrequencies() {
+        return this.termFrequencies;
+    }
+
+    /**
+     * @return the positions of all the documents one after the other, for the codecs. The array is not copied.
+     * @throws IllegalStateException if the posting list was read without positions.
+     */
+    int[] positions() {
+        if (this.positions == null) {
+            throw new IllegalStateException("The posting list was read without positions");
+        }
+
+        return this.positions;
+    }
+
+    /**
+     * @return the number of positions of all the documents.
+     * @throws IllegalStateException if the posting list was read without positions.
+     */
+    int positionCount() {
+        if (this.positions == null) {
+            throw new IllegalStateException("The posting list was read without positions");
+        }
+
+        return this.positionStarts[this.size];
+    }
+
+    /**
+     * @return true if the postings have their term positions.
+     */
+    public boolean hasPositions() {
+        return this.positions != null;
+    }
+
+    /**
+     * @param i the index of the posting.
+     * @return the positions of the term in the document of the posting, in ascending order.
+     * @throws IllegalStateException if the posting list was read without positions.
+     */
+    public int[] getTermPositions(int i) {
+        if (this.positions == null) {
+            throw new IllegalStateException("The posting list was read without positions");
+        }
+
+        return Arrays.copyOfRange(this.positions, this.positionStarts[i], this.positionStarts[i + 1]);
+    }
+
+    /**
+     * @param indexes the indexes of the postings to keep, in ascending order.
+     * @param count   the number of indexes.
+     * @return a posting list with the postings at the indexes.
+     */
+    public TermPostings select(int[] indexes, int count) {
+        return this.map(indexes, count, null);
+    }
+
+    /**
+     * Changes the document identifiers of the postings. The mapping has to keep the order of the identifiers.
+     *
+     * @param docIdMap gives the new identifier of each document, or -1 to drop the posting of the document.
+     * @return a posting list with the new identifiers, this posting list if nothing changed.
+     */
+    TermPostings mapDocIds(IntUnaryOperator docIdMap) {
+        int[] indexes = new int[this.size];
+        int[] newDocIds = new int[this.size];
+        int count = 0;
+        boolean changed = false;
+        for (int i = 0; i < this.size; i++) {
+            int docId = docIdMap.applyAsInt(this.docIds[i]);
+            if (docId != -1) {
+                indexes[count] = i;
+                newDocIds[count++] = docId;
+            }
+            changed |= docId != this.docIds[i];
+        }
+
+        return changed ? this.map(indexes, count, newDocIds) : this;
+    }
+
+    /**
+     * @param norms the norms of the documents of the postings.
+     * @return a posting list with the weights computed from the term frequencies and the norms.
+     */
+    TermPostings withWeights(DocNorms norms) {
+        double[] weights = new double[this.size];
+        for (int i = 0; i < this.size; i++) {
+            weights[i] = PositionalIndex.weight(this.termFrequencies[i], norms.get(this.docIds[i]));
+        }
+
+        return new TermPostings(this.size, this.docIds, this.termFrequencies, weights, this.positions);
+    }
+
+    private TermPostings map(int[] indexes, int count, int[] newDocIds) {
+        int[] docIds = newDocIds != null ? newDocIds : new int[count];
+        int[] termFrequencies = new int[count];
+        double[] weights = new double[count];
+        int positionCount = 0;
+        for (int j = 0; j < count; j++) {
+            int i = indexes[j];
+            if (newDocIds == null) {
+                docIds[j] = this.docIds[i];
+            }
+            termFrequencies[j] = this.termFrequencies[i];
+            weights[j] = this.weights[i];
+            positionCount += this.termFrequencies[i];
+        }
+
+        int[] positions = null;
+        if (this.positions != null) {
+            positions = new int[positionCount];
+            int p = 0;
+            for (int j = 0; j < count; j++) {
+                int i = indexes[j];
+                int len = this.positionStarts[i + 1] - this.positionStarts[i];
+                System.arraycopy(this.positions, this.positionStarts[i], positions, p, len);
+                p += len;
+            }
+        }
+
+        return new TermPostings(count, docIds, termFrequencies, weights, positions);
+    }
+
+    /**
+     * @param postingLists posting lists where each document identifier is greater than the ones of the lists before.
+     * @return a posting list with the postings of all the lists, with positions only if all the lists have them.
+     */
+    static TermPostings concat(List<TermPostings> postingLists) {
+        if (postingLists.size() == 1) {
+            return postingLists.get(0);
+        }
+
+        int size = 0;
+        int positionCount = 0;
+        boolean withPositions = true;
+        for (TermPostings postings : postingLists) {
+            size += postings.size;
+            withPositions &= postings.positions != null;
+            if (postings.positions != null) {
+                positionCount += postings.positionStarts[postings.size];
+            }
+        }
+
+        int[] docIds = new int[size];
+        int[] termFrequencies = new int[size];
+        double[] weights = new double[size];
+        int[] positions = withPositions ? new int[positionCount] : null;
+        int offset = 0;
+        int positionOffset = 0;
+        for (TermPostings postings : postingLists) {
+            System.arraycopy(postings.docIds, 0, docIds, offset, postings.size);
+            System.arraycopy(postings.termFrequencies, 0, termFrequencies, offset, postings.size);
+            System.arraycopy(postings.weights, 0, weights, offset, postings.size);
+            offset += postings.size;
+            if (withPositions) {
+                int len = postings.positionStarts[postings.size];
+                System.arraycopy(postings.positions, 0, positions, positionOffset, len);
+                positionOffset += len;
+            }
+        }
+
+        return new TermPostings(size, docIds, termFrequencies, weights, positions);
+    }
+}
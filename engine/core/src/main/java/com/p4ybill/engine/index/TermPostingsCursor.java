@@ -0,0 +1,91 @@
+package com.p4ybill.engine.index;
+
+/**
+ * A cursor over a decoded posting list, for the formats that have no skip entries. The whole list is a single block.
+ */
+final class TermPostingsCursor implements PostingsCursor {
+    private final TermPostings postings;
+    private final double maxWeight;
+    private int i;
+    private int docId;
+    // true if every posting is before the target of the last shallow advance.
+    private boolean shallowEnd;
+
+    /**
+     * @param postings the posting list, sorted by document identifier.
+     */
+    TermPostingsCursor(TermPostings postings) {
+        this.postings = postings;
+        double maxWeight = 0;
+        for (int i = 0; i < postings.size(); i++) {
+            maxWeight = Math.max(maxWeight, postings.getWeight(i));
+        }
+        this.maxWeight = maxWeight;
+        this.i = -1;
+        this.docId = -1;
+    }
+
+    @Override
+    public int docId() {
+        return this.docId;
+    }
+
+    @Override
+    public int nextDoc() {
+        return this.moveTo(this.i + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+        if (target <= this.docId) {
+            return this.docId;
+        }
+
+        // binary search after the current posting.
+        int low = this.i + 1;
+        int high = this.postings.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.postings.getDocId(mid) < target) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return this.moveTo(low);
+    }
+
+    private int moveTo(int i) {
+        this.i = i;
+        this.docId = i < this.postings.size() ? this.postings.getDocId(i) : NO_MORE_DOCS;
+        return this.docId;
+    }
+
+    @Override
+    public double weight() {
+        return this.postings.getWeight(this.i);
+    }
+
+    @Override
+    public int cost() {
+        return this.postings.size();
+    }
+
+    @Override
+    public double maxWeight() {
+        return this.maxWeight;
+    }
+
+    @Override
+    public int advanceShallow(int target) {
+        int size = this.postings.size();
+        this.shallowEnd = size == 0 || target > this.postings.getDocId(size - 1);
+        return this.shallowEnd ? NO_MORE_DOCS : this.postings.getDocId(size - 1);
+    }
+
+    @Override
+    public double blockMaxWeight() {
+        return this.shallowEnd ? 0 : this.maxWeight;
+    }
+}
@@ -0,0 +1,132 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.utils.IntObjectHashMap;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Postings accumulator where every indexing thread owns a private segment (SPIMI style),
+ * so inserts never contend on a lock. All segments share the global term identifiers, so they are merged
+ * in {@link #sortedTermPostings()} by walking the identifiers once in term order and concatenating
+ * the posting lists that each segment has for the term.
+ */
+final class ThreadSegmentPostings implements PostingsAccumulator {
+    private final TermDictionary dictionary;
+    private final List<Segment> segments;
+    private final ThreadLocal<Segment> threadSegment;
+
+    ThreadSegmentPostings(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.segments = new CopyOnWriteArrayList<>();
+        this.threadSegment = ThreadLocal.withInitial(() -> {
+            Segment segment = new Segment();
+            this.segments.add(segment);
+            return segment;
+        });
+    }
+
+    @Override
+    public long insert(int termId, int docId, int pos) {
+        Segment segment = this.threadSegment.get();
+        long allocated = segment.ensureTerm(termId);
+
+        return allocated + segment.postings.get(termId).addPosition(docId, pos);
+    }
+
+    @Override
+    public long add(int termId, int docId, int[] positions, int from, int len) {
+        Segment segment = this.threadSegment.get();
+        long allocated = segment.ensureTerm(termId);
+
+        return allocated + segment.postings.get(termId).addDocument(docId, positions, from, len);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, PostingsBuffer>> sortedTermPostings() {
+        int[] sortedIds = this.dictionary.sortedIds();
+        Segment[] segments = this.segments.toArray(new Segment[0]);
+
+        return new Iterator<>() {
+            private int i = 0;
+            private Map.Entry<String, PostingsBuffer> next = this.advance();
+
+            private Map.Entry<String, PostingsBuffer> advance() {
+                while (this.i < sortedIds.length) {
+                    int termId = sortedIds[this.i++];
+                    PostingsBuffer merged = null;
+                    boolean copied = false;
+                    for (Segment segment : segments) {
+                        PostingsBuffer postings = segment.postings.get(termId);
+                        if (postings == null) {
+                            continue;
+                        }
+                        if (merged == null) {
+                            merged = postings;
+                        } else {
+                            // copy the first list, the lists of the segments are not modified.
+                            if (!copied) {
+                                PostingsBuffer copy = new PostingsBuffer();
+                                copy.addAll(merged);
+                                merged = copy;
+                                copied = true;
+                            }
+                            merged.addAll(postings);
+                        }
+                    }
+                    if (merged != null) {
+                        return Map.entry(dictionary.getTerm(termId), merged);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Map.Entry<String, PostingsBuffer> next() {
+                if (this.next == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, PostingsBuffer> current = this.next;
+                this.next = this.advance();
+                return current;
+            }
+        };
+    }
+
+    @Override
+    public void clear() {
+        // the segments stay registered to their threads, only their postings are released.
+        for (Segment segment : this.segments) {
+            segment.postings = new IntObjectHashMap<>();
+        }
+    }
+
+    /**
+     * Private in-memory inverted index of a single thread.
+     */
+    private static final class Segment {
+        private IntObjectHashMap<PostingsBuffer> postings = new IntObjectHashMap<>();
+
+        /**
+         * Creates the posting list of the term if it does not exist.
+         *
+         * @return approximate heap bytes that were allocated.
+         */
+        long ensureTerm(int termId) {
+            if (this.postings.get(termId) != null) {
+                return 0;
+            }
+            this.postings.put(termId, new PostingsBuffer());
+
+            return PostingsBuffer.newTermMemoryBytes();
+        }
+    }
+}
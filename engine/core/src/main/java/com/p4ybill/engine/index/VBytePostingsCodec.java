@@ -0,0 +1,197 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.utils.VariableByteEncoding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The {@link PostingsFormat#VBYTE} and {@link PostingsFormat#VBYTE_SPLIT} codec. A posting list is encoded
+ * in variable bytes as
+ * <ol>
+ *     <li>the number of postings,</li>
+ *     <li>the gap of each document identifier from the previous one, starting from 0,</li>
+ *     <li>the term frequency of each document,</li>
+ *     <li>with quantized impacts, the scale of the list as a float and the quantized weight of each document
+ *     in 1 or 2 bytes,</li>
+ *     <li>for each document, the gap of each position from the previous position of the document, starting from 0.</li>
+ * </ol>
+ * With separate positions the last part is encoded apart, for the positions file.
+ * Without quantized impacts the weights are not stored, they are computed from the term frequencies
+ * and the norms of the documents.
+ */
+final class VBytePostingsCodec implements PostingsCodec {
+    private final boolean separatePositions;
+    // null if the weights are computed from the norms.
+    private final ImpactQuantizer quantizer;
+
+    /**
+     * @param separatePositions true to encode the positions apart from the posting list.
+     */
+    VBytePostingsCodec(boolean separatePositions) {
+        this(separatePositions, null);
+    }
+
+    private VBytePostingsCodec(boolean separatePositions, ImpactQuantizer quantizer) {
+        this.separatePositions = separatePositions;
+        this.quantizer = quantizer;
+    }
+
+    @Override
+    public byte[] encode(TermPostings postings) throws IOException {
+        int size = postings.size();
+        // each integer takes at most MAX_LENGTH bytes.
+        int length = VariableByteEncoding.MAX_LENGTH * (1 + 2 * size);
+        if (this.quantizer != null) {
+            length += 4 + this.quantizer.getBytes() * size;
+        }
+        if (!this.separatePositions) {
+            length += VariableByteEncoding.MAX_LENGTH * postings.positionCount();
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        VariableByteEncoding.encode(size, buf);
+        VariableByteEncoding.encodeDeltas(postings.docIds(), 0, size, 0, buf);
+        VariableByteEncoding.encode(postings.termFrequencies(), 0, size, buf);
+        if (this.quantizer != null) {
+            this.writeImpacts(postings, buf);
+        }
+        if (!this.separatePositions) {
+            writePositions(postings, buf);
+        }
+
+        return toBytes(buf);
+    }
+
+    private void writeImpacts(TermPostings postings, ByteBuffer buf) {
+        double maxWeight = 0;
+        for (int i = 0; i < postings.size(); i++) {
+            maxWeight = Math.max(maxWeight, postings.getWeight(i));
+        }
+        float scale = (float) maxWeight;
+        writeBytes(Float.floatToIntBits(scale), 4, buf);
+
+        for (int i = 0; i < postings.size(); i++) {
+            writeBytes(this.quantizer.quantize(postings.getWeight(i), scale), this.quantizer.getBytes(), buf);
+        }
+    }
+
+    /**
+     * Writes the lowest bytes of the value, the highest first.
+     */
+    static void writeBytes(int value, int bytes, ByteBuffer buf) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            buf.put((byte) (value >>> shift));
+        }
+    }
+
+    /**
+     * @return the bytes of the buffer up to its position.
+     */
+    static byte[] toBytes(ByteBuffer buf) {
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    static int readBytes(int bytes, ByteBuffer buf) {
+        int value = 0;
+        for (int k = 0; k < bytes; k++) {
+            value = (value << 8) | (buf.get() & 0xff);
+        }
+
+        return value;
+    }
+
+    @Override
+    public PostingsCodec withImpacts(ImpactQuantizer quantizer) {
+        return new VBytePostingsCodec(this.separatePositions, quantizer);
+    }
+
+    @Override
+    public boolean hasSeparatePositions() {
+        return this.separatePositions;
+    }
+
+    @Override
+    public byte[] encodePositions(TermPostings postings) throws IOException {
+        if (!this.separatePositions) {
+            return PostingsCodec.super.encodePositions(postings);
+        }
+
+        return encodeSeparatePositions(postings);
+    }
+
+    /**
+     * @return the positions of the posting list that were written by {@link #writePositions}.
+     */
+    static byte[] encodeSeparatePositions(TermPostings postings) {
+        ByteBuffer buf = ByteBuffer.allocate(VariableByteEncoding.MAX_LENGTH * postings.positionCount());
+        writePositions(postings, buf);
+        return toBytes(buf);
+    }
+
+    /**
+     * Writes the gaps between the positions of each document of the posting list, in variable bytes.
+     */
+    static void writePositions(TermPostings postings, ByteBuffer buf) {
+        int[] positions = postings.positions();
+        int p = 0;
+        for (int i = 0; i < postings.size(); i++) {
+            int tf = postings.getTermFrequency(i);
+            // the gaps of each document start from 0.
+            VariableByteEncoding.encodeDeltas(positions, p, tf, 0, buf);
+            p += tf;
+        }
+    }
+
+    @Override
+    public TermPostings decode(ByteBuffer bytes, ByteBuffer positions, DocNorms norms) {
+        int size = VariableByteEncoding.decode(bytes);
+
+        int[] docIds = new int[size];
+        VariableByteEncoding.decodeDeltas(bytes, 0, docIds, 0, size);
+
+        int[] termFrequencies = new int[size];
+        double[] weights = new double[size];
+        VariableByteEncoding.decode(bytes, termFrequencies, 0, size);
+        int positionCount = 0;
+        for (int i = 0; i < size; i++) {
+            positionCount += termFrequencies[i];
+        }
+
+        if (this.quantizer != null) {
+            float scale = Float.intBitsToFloat(readBytes(4, bytes));
+            for (int i = 0; i < size; i++) {
+                weights[i] = this.quantizer.dequantize(readBytes(this.quantizer.getBytes(), bytes), scale);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                weights[i] = PositionalIndex.weight(termFrequencies[i], norms == null ? 1 : norms.get(docIds[i]));
+            }
+        }
+
+        int[] termPositions = null;
+        if (!this.separatePositions) {
+            termPositions = readPositions(bytes, termFrequencies, positionCount);
+        } else if (positions != null) {
+            termPositions = readPositions(positions, termFrequencies, positionCount);
+        }
+
+        return new TermPostings(size, docIds, termFrequencies, weights, termPositions);
+    }
+
+    /**
+     * @return the positions that were written by {@link #writePositions}, of all the documents one after the other.
+     */
+    static int[] readPositions(ByteBuffer buf, int[] termFrequencies, int positionCount) {
+        int[] positions = new int[positionCount];
+        int p = 0;
+        for (int tf : termFrequencies) {
+            // the gaps of each document start from 0.
+            VariableByteEncoding.decodeDeltas(buf, 0, positions, p, tf);
+            p += tf;
+        }
+
+        return positions;
+    }
+}
@@ -0,0 +1,40 @@
+package com.p4ybill.engine.index;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Unpacks the blocks of {@link BitPacking} with 4-lane int vectors, a row of 4 values at a time.
+ * The class is experimental: it needs the jdk.incubator.vector module to compile and to run, so it is only compiled
+ * with the vectorUnpacker property of the build, and {@link BitPacking} only loads it by reflection, and falls back
+ * to its scalar unpacker without it.
+ */
+final class VectorBitUnpacker implements BitPacking.BitUnpacker {
+    // 128 bits, always the 4 lanes of the layout.
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_128;
+
+    @Override
+    public void unpack(int[] words, int bits, int[] values) {
+        int mask = (1 << bits) - 1;
+        int lastWord = bits * BitPacking.LANES;
+        int word = 0;
+        int shift = 0;
+        IntVector w = IntVector.fromArray(SPECIES, words, 0);
+        for (int row = 0; row < BitPacking.BLOCK_SIZE / BitPacking.LANES; row++) {
+            IntVector v = w.lanewise(VectorOperators.LSHR, shift);
+            shift += bits;
+            if (shift >= 32) {
+                shift -= 32;
+                word += BitPacking.LANES;
+                if (word < lastWord) {
+                    w = IntVector.fromArray(SPECIES, words, word);
+                    if (shift > 0) {
+                        v = v.or(w.lanewise(VectorOperators.LSHL, bits - shift));
+                    }
+                }
+            }
+            v.and(mask).intoArray(values, row * BitPacking.LANES);
+        }
+    }
+}
@@ -10,18 +10,27 @@ public class EnhancedTokenizer implements Tokenizer<List<String>>{
     private final String DELIMITERS = " .!?-',\t\n;()[]{}:\"-/";
     private List<String> stopList;
     private PorterStemmer stemmer;
+    private StemCache stemCache;
 
     public EnhancedTokenizer(){
-        stopList = null;
-        this.stemmer = new PorterStemmer();
+        this(null);
     }
 
     /**
      * @param stopList List<String> If null means that no stop list will be used
      */
     public EnhancedTokenizer(List<String> stopList){
+        this(stopList, null);
+    }
+
+    /**
+     * @param stopList  List<String> If null means that no stop list will be used
+     * @param stemCache cache of the stemmed words. If null means that every word will be stemmed.
+     */
+    public EnhancedTokenizer(List<String> stopList, StemCache stemCache){
         this.stopList = stopList;
         this.stemmer = new PorterStemmer();
+        this.stemCache = stemCache;
     }
 
     public List<String> tokenize(String sLine) {
@@ -50,11 +59,24 @@ public class EnhancedTokenizer implements Tokenizer<List<String>>{
     }
 
     /**
-     * Stems the specified token. Thread safe.
+     * Stems the specified token, looking it up in the stem cache first. Thread safe.
      * @param sToken
      * @return
      */
-    private synchronized String getStemmedToken(String sToken){
+    private String getStemmedToken(String sToken){
+        if(this.stemCache == null){
+            return this.stem(sToken);
+        }
+
+        String stem = this.stemCache.get(sToken);
+        if(stem == null){
+            stem = this.stem(sToken);
+            this.stemCache.put(sToken, stem);
+        }
+        return stem;
+    }
+
+    private synchronized String stem(String sToken){
         char[] charArr = sToken.toCharArray();
         this.stemmer.add(charArr, charArr.length);
         this.stemmer.stem();
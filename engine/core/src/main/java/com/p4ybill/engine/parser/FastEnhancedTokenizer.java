@@ -0,0 +1,280 @@
+package com.p4ybill.engine.parser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tokenizer that produces exactly the same terms as {@link EnhancedTokenizer}, but scans the text once
+ * with a precomputed delimiter table, detects numbers while scanning, checks stop words against a hash set of
+ * char arrays and stems with a stemmer per thread, so there is no lock and no temporary strings per token.
+ * When a {@link StemCache} is given, words are stemmed once and the cached stems are shared.
+ */
+public class FastEnhancedTokenizer implements Tokenizer<List<String>> {
+    private static final String DELIMITERS = " .!?-',\t\n;()[]{}:\"-/";
+    private static final boolean[] DELIMITER_TABLE = new boolean[128];
+    private static final char LINE_SEPARATOR = (char) 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = (char) 0x2029;
+
+    static {
+        for (char c : DELIMITERS.toCharArray()) {
+            DELIMITER_TABLE[c] = true;
+        }
+    }
+
+    private volatile StopWords stopWords;
+    private final ThreadLocal<Scratch> scratch;
+    private final StemCache stemCache;
+
+    public FastEnhancedTokenizer() {
+        this(null);
+    }
+
+    /**
+     * @param stopList List<String> If null means that no stop list will be used
+     */
+    public FastEnhancedTokenizer(List<String> stopList) {
+        this(stopList, null);
+    }
+
+    /**
+     * @param stopList  List<String> If null means that no stop list will be used
+     * @param stemCache cache of the stemmed words. If null means that every word will be stemmed.
+     */
+    public FastEnhancedTokenizer(List<String> stopList, StemCache stemCache) {
+        this.scratch = ThreadLocal.withInitial(Scratch::new);
+        this.stemCache = stemCache;
+        this.setStopList(stopList);
+    }
+
+    public List<String> tokenize(String sLine) {
+        List<String> fileTermList = new ArrayList<>();
+        Scratch s = this.scratch.get();
+        StopWords stop = this.stopWords;
+        // String.toLowerCase() maps ASCII letters differently only for these languages, e.g. 'I' in Turkish.
+        String language = Locale.getDefault().getLanguage();
+        boolean asciiLowerCase = !language.equals("tr") && !language.equals("az") && !language.equals("lt");
+
+        int n = sLine.length();
+        char[] text = s.text(n);
+        sLine.getChars(0, n, text, 0);
+
+        int i = 0;
+        while (i < n) {
+            // skip delimiters
+            while (i < n && isDelimiter(text[i])) {
+                i++;
+            }
+            if (i == n) {
+                break;
+            }
+
+            int start = i;
+            boolean ascii = true;
+            boolean digit = false;
+            boolean lineTerminator = false;
+            while (i < n && !isDelimiter(text[i])) {
+                char c = text[i];
+                if (c >= 128) {
+                    ascii = false;
+                    lineTerminator |= c == '\u0085' || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR;
+                } else if (c >= '0' && c <= '9') {
+                    digit = true;
+                } else if (c == '\r') {
+                    lineTerminator = true;
+                }
+                i++;
+            }
+
+            // lowercase the token in the token buffer
+            char[] token;
+            int tokenLength;
+            if (ascii && asciiLowerCase) {
+                tokenLength = i - start;
+                token = s.token(tokenLength);
+                for (int j = 0; j < tokenLength; j++) {
+                    char c = text[start + j];
+                    token[j] = (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+                }
+            } else {
+                String lower = new String(text, start, i - start).toLowerCase();
+                tokenLength = lower.length();
+                token = s.token(tokenLength);
+                lower.getChars(0, tokenLength, token, 0);
+            }
+
+            // EnhancedTokenizer treats a token as a number when it matches ".*\d.*",
+            // and '.' does not match line terminators.
+            boolean number = digit && !lineTerminator;
+            if (stop != null && stop.removedBeforeStem.contains(token, tokenLength)) {
+                continue;
+            }
+
+            if (!number && this.stemCache != null) {
+                String stem = this.cachedStem(s.stemmer, token, tokenLength);
+                // remove terms that are in the stop list.
+                if (stop == null || !stop.wordSet.contains(stem)) {
+                    fileTermList.add(stem);
+                }
+                continue;
+            }
+
+            if (!number) {
+                s.stemmer.add(token, tokenLength);
+                s.stemmer.stem();
+                token = s.stemmer.getResultBuffer();
+                tokenLength = s.stemmer.getResultLength();
+            }
+
+            // remove terms that are in the stop list.
+            if (stop != null && stop.words.contains(token, tokenLength)) {
+                continue;
+            }
+
+            fileTermList.add(new String(token, 0, tokenLength));
+        }
+
+        return fileTermList;
+    }
+
+    /**
+     * @return the stem of the token from the stem cache, stemming and caching it on a miss.
+     */
+    private String cachedStem(PorterStemmer stemmer, char[] token, int tokenLength) {
+        String word = new String(token, 0, tokenLength);
+        String stem = this.stemCache.get(word);
+        if (stem == null) {
+            stemmer.add(token, tokenLength);
+            stemmer.stem();
+            stem = stemmer.toString();
+            this.stemCache.put(word, stem);
+        }
+
+        return stem;
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c < 128 && DELIMITER_TABLE[c];
+    }
+
+    /**
+     * Setter for current stopList that will be used in tokenization.
+     *
+     * @param stopList If null means that no stoplist will be used
+     */
+    public void setStopList(List<String> stopList) {
+        this.stopWords = stopList == null ? null : new StopWords(stopList);
+    }
+
+    /**
+     * Stop words are compared with the terms after stemming. The surface forms that are stop words
+     * and whose term is a stop word too, are removed before stemming.
+     */
+    private static final class StopWords {
+        private final CharArraySet words;
+        private final Set<String> wordSet;
+        private final CharArraySet removedBeforeStem;
+
+        StopWords(List<String> stopList) {
+            this.words = new CharArraySet(stopList);
+            this.wordSet = new HashSet<>(stopList);
+
+            PorterStemmer stemmer = new PorterStemmer();
+            List<String> removed = new ArrayList<>();
+            for (String word : stopList) {
+                String term = word;
+                if (!word.matches(".*\\d.*")) {
+                    stemmer.add(word.toCharArray(), word.length());
+                    stemmer.stem();
+                    term = stemmer.toString();
+                }
+                if (stopList.contains(term)) {
+                    removed.add(word);
+                }
+            }
+            this.removedBeforeStem = new CharArraySet(removed);
+        }
+    }
+
+    /**
+     * Open addressing hash set of strings that is queried with a portion of a char array.
+     */
+    private static final class CharArraySet {
+        private final char[][] table;
+        private final int mask;
+
+        CharArraySet(List<String> words) {
+            int capacity = Integer.highestOneBit(Math.max(2, words.size() * 2) - 1) << 1;
+            this.table = new char[capacity][];
+            this.mask = capacity - 1;
+            for (String word : words) {
+                char[] w = word.toCharArray();
+                if (!this.contains(w, w.length)) {
+                    int slot = hash(w, w.length) & this.mask;
+                    while (this.table[slot] != null) {
+                        slot = (slot + 1) & this.mask;
+                    }
+                    this.table[slot] = w;
+                }
+            }
+        }
+
+        boolean contains(char[] buf, int len) {
+            int slot = hash(buf, len) & this.mask;
+            char[] w;
+            while ((w = this.table[slot]) != null) {
+                if (equals(w, buf, len)) {
+                    return true;
+                }
+                slot = (slot + 1) & this.mask;
+            }
+
+            return false;
+        }
+
+        private static int hash(char[] buf, int len) {
+            int h = 0;
+            for (int i = 0; i < len; i++) {
+                h = 31 * h + buf[i];
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean equals(char[] w, char[] buf, int len) {
+            if (w.length != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (w[i] != buf[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Buffers and stemmer that are reused by the tokenizations of one thread.
+     */
+    private static final class Scratch {
+        private final PorterStemmer stemmer = new PorterStemmer();
+        private char[] text = new char[256];
+        private char[] token = new char[64];
+
+        char[] text(int length) {
+            if (this.text.length < length) {
+                this.text = new char[length];
+            }
+            return this.text;
+        }
+
+        char[] token(int length) {
+            if (this.token.length < length) {
+                this.token = new char[length];
+            }
+            return this.token;
+        }
+    }
+}
@@ -5,14 +5,37 @@ import com.p4ybill.engine.utils.EngineUtils;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
 
 public class Parser {
+    // size in bytes of the chunks that are read from a file when streaming.
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+    // text without any whitespace longer than this is tokenized anyway, so the pending text stays bounded.
+    private static final int MAX_PENDING_CHARS = 4 * STREAM_CHUNK_SIZE;
+
     private final Tokenizer<List<String>> tokenizer;
+    private final StemCache stemCache;
 
     public Parser(){
-        tokenizer = new EnhancedTokenizer(Arrays.asList(EngineUtils.STOP_LIST));
+        this(EngineUtils.DEFAULT_STEM_CACHE_SIZE);
+    }
+
+    /**
+     * @param stemCacheSize the maximum number of words in the stem cache of the tokenizer.
+     *                      Zero or less means that no stem cache will be used.
+     */
+    public Parser(int stemCacheSize){
+        this.stemCache = stemCacheSize > 0 ? new StemCache(stemCacheSize) : null;
+        tokenizer = new FastEnhancedTokenizer(Arrays.asList(EngineUtils.STOP_LIST), this.stemCache);
     }
 
     /**
@@ -36,6 +59,108 @@ public class Parser {
         return tokenize(sb.toString());
     }
 
+    /**
+     * Streams the specified file in fixed size chunks and passes each analyzed term with its position
+     * to the consumer, so neither the whole text nor the whole term list of the file is kept in memory.
+     * The terms and positions are the same as the ones of {@link #parseFile(String)}, except that text with no
+     * whitespace for more than {@link #MAX_PENDING_CHARS} characters is split there.
+     *
+     * @param sFile    string the path of the file
+     * @param consumer receives the analyzed terms in the order of the file.
+     * @return the number of terms that were passed to the consumer.
+     *
+     * @throws IOException
+     */
+    public int parseFile(String sFile, TermConsumer consumer) throws IOException {
+        // same decoding as FileReader, which is used by parseFile(String)
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(STREAM_CHUNK_SIZE);
+        CharBuffer chars = CharBuffer.allocate(STREAM_CHUNK_SIZE);
+        StringBuilder pending = new StringBuilder();
+        int position = 0;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(sFile), StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(bytes) == -1;
+                bytes.flip();
+                decoder.decode(bytes, chars, eof);
+                if (eof) {
+                    decoder.flush(chars);
+                }
+                // keep any incomplete character for the next chunk
+                bytes.compact();
+
+                chars.flip();
+                position = this.tokenizeChunk(chars, pending, eof, consumer, position);
+                chars.clear();
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Tokenizes the whole text of a file that is already in memory and passes each analyzed term with its position
+     * to the consumer. The terms and positions are the same as the ones of {@link #parseFile(String)}.
+     *
+     * @param text     the content of a file.
+     * @param consumer receives the analyzed terms in the order of the text.
+     * @return the number of terms that were passed to the consumer.
+     */
+    public int parseText(String text, TermConsumer consumer) {
+        // parseFile(String) reads line by line, so line terminators never reach the tokenizer.
+        int position = 0;
+        for (String term : this.tokenize(text.replace('\r', ' '))) {
+            consumer.accept(term, position++);
+        }
+
+        return position;
+    }
+
+    /**
+     * Appends the decoded chunk to the pending text and tokenizes it up to the last whitespace,
+     * so that a term split between two chunks is tokenized once the next chunk arrives.
+     *
+     * @return the position of the next term.
+     */
+    private int tokenizeChunk(CharBuffer chunk, StringBuilder pending, boolean last,
+                              TermConsumer consumer, int position) {
+        while (chunk.hasRemaining()) {
+            char c = chunk.get();
+            // parseFile(String) reads line by line, so line terminators never reach the tokenizer.
+            pending.append(c == '\r' ? ' ' : c);
+        }
+
+        int end = pending.length();
+        if (!last && end <= MAX_PENDING_CHARS) {
+            end = this.lastWhitespace(pending) + 1;
+        }
+        if (end == 0) {
+            return position;
+        }
+
+        for (String term : this.tokenize(pending.substring(0, end))) {
+            consumer.accept(term, position++);
+        }
+        pending.delete(0, end);
+
+        return position;
+    }
+
+    private int lastWhitespace(CharSequence text) {
+        for (int i = text.length() - 1; i >= 0; i--) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\n' || c == '\t') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
     public List<String> tokenize(String sLine) {
         return tokenizer.tokenize(sLine);
     }
@@ -43,4 +168,11 @@ public class Parser {
     public Tokenizer<List<String>> getTokenizer(){
         return this.tokenizer;
     }
+
+    /**
+     * @return the stem cache of the tokenizer, with its hit and miss counters. Null if no stem cache is used.
+     */
+    public StemCache getStemCache(){
+        return this.stemCache;
+    }
 }
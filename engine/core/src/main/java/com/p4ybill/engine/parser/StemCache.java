@@ -0,0 +1,84 @@
+package com.p4ybill.engine.parser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe cache from surface forms to their stems, so that the stemmer runs once per distinct word.
+ * Natural language text is Zipfian, so a few thousands of words make most of the tokens.
+ * The cache is bounded: when it is full, new words are stemmed but not cached anymore,
+ * and the frequent words, which are seen first, stay in the cache.
+ */
+public class StemCache {
+    private final Map<String, String> stems;
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * @param maxSize the maximum number of cached words.
+     */
+    public StemCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Stem cache size must be positive, got: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.stems = new ConcurrentHashMap<>(Math.min(maxSize, 1 << 16));
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * @param word the surface form of a word.
+     * @return the cached stem of the word or null if the word is not cached.
+     */
+    public String get(String word) {
+        String stem = this.stems.get(word);
+        if (stem != null) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+        }
+
+        return stem;
+    }
+
+    /**
+     * Caches the stem of a word, if the cache is not full.
+     *
+     * @param word the surface form of a word.
+     * @param stem the stem of the word.
+     */
+    public void put(String word, String stem) {
+        // the size check is not atomic with the insert, so the cache can exceed its size by a few entries.
+        if (this.stems.size() < this.maxSize) {
+            this.stems.putIfAbsent(word, stem);
+        }
+    }
+
+    public int size() {
+        return this.stems.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return the ratio of lookups that were found in the cache, 0 if there were no lookups.
+     */
+    public double getHitRatio() {
+        long hits = this.getHits();
+        long total = hits + this.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
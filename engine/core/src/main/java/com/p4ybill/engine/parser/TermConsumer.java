@@ -0,0 +1,13 @@
+package com.p4ybill.engine.parser;
+
+/**
+ * Receives the analyzed terms of a document one by one, as they are produced by the {@link Parser}.
+ */
+@FunctionalInterface
+public interface TermConsumer {
+    /**
+     * @param term     the analyzed term.
+     * @param position the position of the term in the document.
+     */
+    void accept(String term, int position);
+}
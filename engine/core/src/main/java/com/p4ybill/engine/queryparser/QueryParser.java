@@ -3,7 +3,6 @@ package com.p4ybill.engine.queryparser;
 import com.p4ybill.engine.index.IndexManager;
 import com.p4ybill.engine.search.ScoreSearcher;
 import com.p4ybill.engine.search.SearchBooleanQuery;
-import com.p4ybill.engine.store.EngineIndexPB;
 import com.p4ybill.engine.utils.EngineUtils;
 
 import java.io.IOException;
@@ -49,6 +48,24 @@ public class QueryParser {
         return scoreDocuments;
     }
 
+    /**
+     * Checked if its a boolean query and calls the right method, keeping only the first documents.
+     * The free text queries skip the parts of the posting lists that cannot reach the first k documents.
+     *
+     * @param query string submitted query input from the user.
+     * @param k     the number of documents to keep.
+     * @return List<ScoreDocument> the k documents with the highest scores, or the first k documents
+     * of a boolean query in the order of their identifiers.
+     */
+    public List<ScoreDocument> query(String query, int k) {
+        if (isBoolQuery(query)) {
+            List<ScoreDocument> scoreDocuments = processBool(query);
+            return new ArrayList<>(scoreDocuments.subList(0, Math.min(Math.max(k, 0), scoreDocuments.size())));
+        }
+
+        return new ScoreSearcher(im).search(query, k);
+    }
+
     /**
      * It is called when the query provided by the user is a boolean query
      *
@@ -57,19 +74,16 @@ public class QueryParser {
      */
     private List<ScoreDocument> processBool(String query){
         SearchBooleanQuery searchBooleanQuery = new SearchBooleanQuery();
-        List<EngineIndexPB.PostingList.Posting> result = new ArrayList<>();
         String termsWithoutAnd = removeAnd(query);
 
         List<String> terms = this.im.getParserTokenizer().tokenize(termsWithoutAnd);
 
-        List<EngineIndexPB.PostingList> termsPosting = im.getTermsPostingList(terms);
-
-        result = searchBooleanQuery.intersectMany(termsPosting);
-        List<ScoreDocument> scores = new ArrayList<>(result.size());
+        // only the documents are intersected, the cursors skip the blocks of the frequent terms.
+        int[] result = im.searchSegments(() -> searchBooleanQuery.intersectAll(im.getTermsCursors(terms)));
+        List<ScoreDocument> scores = new ArrayList<>(result.length);
 
-        for(int i = 0; i< result.size() ; i++){
-            EngineIndexPB.PostingList.Posting posting = result.get(i);
-            ScoreDocument doc = new ScoreDocument(posting.getDocId());
+        for(int docId : result){
+            ScoreDocument doc = new ScoreDocument(docId);
             scores.add(doc);
         }
 
@@ -89,7 +103,7 @@ public class QueryParser {
 
         try {
             scores = searcher.search(query);
-            // sort the results by scores in descending order
+            // sort the results by scores in descending order, the same scores by identifier
             if(scores != null){
                 Collections.sort(scores);
             }else{
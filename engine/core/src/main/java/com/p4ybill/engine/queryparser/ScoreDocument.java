@@ -23,6 +23,10 @@ public class ScoreDocument implements Comparable<ScoreDocument>{
         this.score = score;
     }
 
+    /**
+     * Orders the documents by descending score, and the documents with the same score by ascending identifier,
+     * so a ranking does not depend on the order the documents were found in.
+     */
     @Override
     public int compareTo(ScoreDocument o) {
         if(this.score > o.score){
@@ -30,7 +34,7 @@ public class ScoreDocument implements Comparable<ScoreDocument>{
         }else if(this.score < o.score){
             return 1;
         }else{
-            return 0;
+            return Integer.compare(this.docId, o.docId);
         }
     }
 
@@ -1,11 +1,10 @@
 package com.p4ybill.engine.search;
 
 import com.p4ybill.engine.index.IndexManager;
+import com.p4ybill.engine.index.PostingsCursor;
 import com.p4ybill.engine.queryparser.ScoreDocument;
-import com.p4ybill.engine.store.EngineIndexPB;
-import java.io.FileInputStream;
+import com.p4ybill.engine.index.TermPostings;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
 import java.util.*;
 
 public class ScoreSearcher {
@@ -16,61 +15,198 @@ public class ScoreSearcher {
     }
 
     public List<ScoreDocument> search(String query) throws IOException {
-
-        FileInputStream inPostings = new FileInputStream(Objects.requireNonNull(this.im.getPostingsFilePath()));
-        FileInputStream inLexicon = new FileInputStream(Objects.requireNonNull(this.im.getLexiconFilePath()));
-        FileChannel postingsChannel = inPostings.getChannel();
-        FileChannel lexiconChannel = inLexicon.getChannel();
-
         // Get tokenized terms of the query using the same tokenizer
         // as the one that is used in Parser.
         List<String> terms = im.getParserTokenizer().tokenize(query);
 
-        List<ScoreDocument> scores = new ArrayList<>();
+        // the score of each document, in the order the documents were first found.
+        Map<Integer, ScoreDocument> scores = new LinkedHashMap<>();
 
         long numberOfDocuments = this.im.getNumberOfDocuments();
 
-        // Iterate each term and compute the score of the docs.
-        for(String term : terms){
-            // Reset the position of the channel for each term
-            lexiconChannel.position(0);
-            postingsChannel.position(0);
+        // posting lists of the terms across all the segments of the index, the positions are not needed.
+        List<TermPostings> termsPostingLists = this.im.getTermsPostingList(terms, false);
 
+        // Iterate each term and compute the score of the docs.
+        for(TermPostings termPostingList : termsPostingLists){
             // TODO: Parallelize the computation of scores after finding the termPostingList
-            EngineIndexPB.PostingList termPostingList = this.im.getPostingList(term, postingsChannel, lexiconChannel);
 
             // Term was not found
             if(termPostingList == null){
                 continue;
             }
 
-            double docFreq = termPostingList.getPostingsCount();
+            double docFreq = termPostingList.size();
             // idf = Log(N/df)
             double idf = Math.log10(((double) numberOfDocuments) / docFreq);
 
-            List<EngineIndexPB.PostingList.Posting> postingList = termPostingList.getPostingsList();
-            for (EngineIndexPB.PostingList.Posting posting : postingList) {
+            for (int i = 0; i < termPostingList.size(); i++) {
+
+                double wfTd = termPostingList.getWeight(i);
+                ScoreDocument doc = scores.computeIfAbsent(termPostingList.getDocId(i), ScoreDocument::new);
+                doc.setScore(doc.getScore() + (idf * wfTd));
+            }
+        }
 
-                double wfTd = posting.getWeight();
-                ScoreDocument docCompare = new ScoreDocument(posting.getDocId());
+        return new ArrayList<>(scores.values());
+    }
 
-                if (scores.contains(docCompare)) {
-                    docCompare = scores.get(scores.indexOf(docCompare));
-                    docCompare.setScore(docCompare.getScore() + (idf * wfTd));
-                } else {
-                    docCompare.setScore((idf * wfTd));
+    /**
+     * Finds the k documents with the highest scores without scoring every document of the posting lists
+     * (MaxScore with the greatest weights of the blocks). The terms whose greatest scores together cannot beat
+     * the k-th score so far are not iterated, their cursors are only advanced to the documents of the other terms,
+     * and a document is dropped before these cursors are moved when the greatest weights of their blocks cannot
+     * lift its score above the k-th score, so their blocks are not decoded.
+     *
+     * @param query the free text query.
+     * @param k     the number of documents to find.
+     * @return at most k documents in the order of {@link ScoreDocument#compareTo}, the first k documents of
+     * {@link #search(String)} once sorted, with the same scores.
+     */
+    public List<ScoreDocument> search(String query, int k) {
+        List<String> terms = im.getParserTokenizer().tokenize(query);
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
 
-                    scores.add(docCompare);
-                }
+        // the cursors read the mapped segments, which must stay mapped until the search is done.
+        return this.im.searchSegments(() -> this.searchCursors(terms, k));
+    }
+
+    private List<ScoreDocument> searchCursors(List<String> terms, int k) {
+        long numberOfDocuments = this.im.getNumberOfDocuments();
+        List<PostingsCursor> termsCursors = this.im.getTermsCursors(terms);
+        // the cost of a cursor counts the deleted documents, the idf is the one of the live documents.
+        int[] docFrequencies = this.im.getDocFrequencies(terms);
+        List<PostingsCursor> cursors = new ArrayList<>();
+        List<Integer> docFreqs = new ArrayList<>();
+        for (int t = 0; t < termsCursors.size(); t++) {
+            // Term was not found, or it is only in deleted documents
+            if (termsCursors.get(t) != null && docFrequencies[t] > 0) {
+                cursors.add(termsCursors.get(t));
+                docFreqs.add(docFrequencies[t]);
             }
         }
 
-        inPostings.close();
-        inLexicon.close();
-        postingsChannel.close();
-        lexiconChannel.close();
+        int n = cursors.size();
+        double[] idfs = new double[n];
+        double[] maxScores = new double[n];
+        for (int t = 0; t < n; t++) {
+            idfs[t] = Math.log10(((double) numberOfDocuments) / docFreqs.get(t));
+            maxScores[t] = idfs[t] * cursors.get(t).maxWeight();
+            cursors.get(t).nextDoc();
+        }
+
+        // the terms in ascending order of their greatest score, and the sum of the greatest scores up to each one.
+        Integer[] order = new Integer[n];
+        for (int t = 0; t < n; t++) {
+            order[t] = t;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(t -> maxScores[t]));
+        double[] maxScoreSums = new double[n];
+        for (int j = 0; j < n; j++) {
+            maxScoreSums[j] = (j > 0 ? maxScoreSums[j - 1] : 0) + maxScores[order[j]];
+        }
 
+        // the k best documents so far, the worst one first.
+        PriorityQueue<ScoreDocument> topDocs = new PriorityQueue<>(k, Collections.reverseOrder());
+        double[] termScores = new double[n];
+        // the terms before this one in the order are not iterated, they cannot make a document beat the k-th one.
+        int essential = 0;
+        while (true) {
+            // the documents come in ascending order of identifier, so a document has to beat the k-th score.
+            double minScore = topDocs.size() < k ? Double.NEGATIVE_INFINITY : topDocs.peek().getScore();
+            while (essential < n && topDocs.size() == k && maxScoreSums[essential] <= minScore) {
+                essential++;
+            }
+            if (essential == n) {
+                break;
+            }
+
+            int docId = PostingsCursor.NO_MORE_DOCS;
+            for (int j = essential; j < n; j++) {
+                docId = Math.min(docId, cursors.get(order[j]).docId());
+            }
+            if (docId == PostingsCursor.NO_MORE_DOCS) {
+                break;
+            }
+
+            Arrays.fill(termScores, 0);
+            double score = 0;
+            for (int j = essential; j < n; j++) {
+                PostingsCursor cursor = cursors.get(order[j]);
+                if (cursor.docId() == docId) {
+                    termScores[order[j]] = idfs[order[j]] * cursor.weight();
+                    score += termScores[order[j]];
+                    cursor.nextDoc();
+                }
+            }
+            if (!this.scoreNonEssential(cursors, order, essential, docId, idfs, maxScoreSums, termScores,
+                    score, minScore)) {
+                continue;
+            }
+
+            // the score is summed in the order of the terms, like in search(String).
+            ScoreDocument doc = new ScoreDocument(docId);
+            for (double termScore : termScores) {
+                doc.setScore(doc.getScore() + termScore);
+            }
+            if (topDocs.size() < k) {
+                topDocs.add(doc);
+            } else if (doc.getScore() > minScore) {
+                topDocs.poll();
+                topDocs.add(doc);
+            }
+        }
+
+        List<ScoreDocument> scores = new ArrayList<>(topDocs);
+        Collections.sort(scores);
         return scores;
     }
 
+    /**
+     * Adds the scores of the terms that are not iterated to the scores of a document, while it can still beat
+     * the k-th score.
+     *
+     * @param score    the score of the document in the iterated terms.
+     * @param minScore the score to beat.
+     * @return false if the document cannot beat the score.
+     */
+    private boolean scoreNonEssential(List<PostingsCursor> cursors, Integer[] order, int essential, int docId,
+                                      double[] idfs, double[] maxScoreSums, double[] termScores,
+                                      double score, double minScore) {
+        if (essential == 0) {
+            return true;
+        }
+
+        // an upper bound of the score from the blocks of the terms, which are not decoded.
+        double bound = score;
+        for (int j = essential - 1; j >= 0; j--) {
+            PostingsCursor cursor = cursors.get(order[j]);
+            if (cursor.docId() == docId) {
+                bound += idfs[order[j]] * cursor.weight();
+            } else if (cursor.docId() < docId && cursor.advanceShallow(docId) != PostingsCursor.NO_MORE_DOCS) {
+                bound += idfs[order[j]] * cursor.blockMaxWeight();
+            }
+        }
+        if (bound <= minScore) {
+            return false;
+        }
+
+        for (int j = essential - 1; j >= 0; j--) {
+            if (score + maxScoreSums[j] <= minScore) {
+                return false;
+            }
+            PostingsCursor cursor = cursors.get(order[j]);
+            if (cursor.docId() < docId) {
+                cursor.advance(docId);
+            }
+            if (cursor.docId() == docId) {
+                termScores[order[j]] = idfs[order[j]] * cursor.weight();
+                score += termScores[order[j]];
+            }
+        }
+
+        return true;
+    }
 }
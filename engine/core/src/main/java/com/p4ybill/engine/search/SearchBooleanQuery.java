@@ -1,6 +1,8 @@
 package com.p4ybill.engine.search;
 
-import com.p4ybill.engine.store.EngineIndexPB;
+import com.p4ybill.engine.index.PostingsCursor;
+import com.p4ybill.engine.index.TermPostings;
+import com.p4ybill.engine.utils.IntArrayList;
 
 import java.util.*;
 
@@ -11,75 +13,97 @@ public class SearchBooleanQuery {
      *
      * @param p1 posting list for termA
      * @param p2 posting list for termB
-     * @return intersected posting list containing the docs that appear in p1 and p2.
+     * @return intersected posting list containing the postings of p1 whose docs also appear in p2.
      */
-    public List<EngineIndexPB.PostingList.Posting> intersect(List<EngineIndexPB.PostingList.Posting> p1, List<EngineIndexPB.PostingList.Posting> p2) {
-        List<EngineIndexPB.PostingList.Posting> intersectList = new ArrayList<>();
-        this.sortPostingList(p1);
-        this.sortPostingList(p2);
+    public TermPostings intersect(TermPostings p1, TermPostings p2) {
+        // the posting lists are sorted by document identifier.
+        int[] intersectIndexes = new int[Math.min(p1.size(), p2.size())];
+        int intersectCount = 0;
 
         int p1Index = 0, p2Index = 0;
         int p1PostingsCount = p1.size();
         int p2PostingsCount = p2.size();
         while (p1Index < p1PostingsCount && p2Index < p2PostingsCount) {
-            if (p1.get(p1Index).getDocId() < p2.get(p2Index).getDocId()) {
+            if (p1.getDocId(p1Index) < p2.getDocId(p2Index)) {
                 p1Index++;
-            } else if (p2.get(p1Index).getDocId() > p2.get(p2Index).getDocId()) {
+            } else if (p1.getDocId(p1Index) > p2.getDocId(p2Index)) {
                 p2Index++;
             } else {
-                intersectList.add(p1.get(p1Index));
+                intersectIndexes[intersectCount++] = p1Index;
                 p1Index++;
                 p2Index++;
             }
         }
-        return intersectList;
+        return p1.select(intersectIndexes, intersectCount);
     }
 
     /**
      * Calculate the intersection of many posting lists.
-     * This method uses the method intersect {@link #intersect(List, List)}.
+     * This method uses the method intersect {@link #intersect(TermPostings, TermPostings)}.
      * This is the implemented method as described in Figure 1.7 of Christopher's Manning IR book.
      *
      * @param termPostingLists List that contains the posting lists to be intersected
-     * @return List that represents the posting list that was made from termPostingLists
+     * @return the posting list that was made from termPostingLists, null if a term is in no document.
      */
-    public List<EngineIndexPB.PostingList.Posting> intersectMany(List<EngineIndexPB.PostingList> termPostingLists) {
+    public TermPostings intersectMany(List<TermPostings> termPostingLists) {
+        if (termPostingLists.isEmpty() || termPostingLists.contains(null)) {
+            return null;
+        }
         this.sortListAsc(termPostingLists);
 
-        List<EngineIndexPB.PostingList.Posting> result = termPostingLists.remove(0).getPostingsList();
-        result = new ArrayList<>(result);
-        while (termPostingLists.size() != 0 && result != null) {
-            List<EngineIndexPB.PostingList.Posting> pl = termPostingLists.remove(0).getPostingsList();
-            // protobuf send an unmodifiableList so we have to create one that can be modified
-            result = intersect(result, new ArrayList<>(pl));
+        TermPostings result = termPostingLists.remove(0);
+        while (termPostingLists.size() != 0 && result.size() > 0) {
+            result = intersect(result, termPostingLists.remove(0));
         }
 
         return result;
     }
 
-    private void sortListAsc(List<EngineIndexPB.PostingList> termsPostings) {
-        termsPostings.sort(new Comparator<EngineIndexPB.PostingList>() {
+    /**
+     * Calculate the intersection of many posting lists with their cursors. The cursor of the rarest term leads and
+     * the other cursors are advanced to its documents, so the cursors of the frequent terms jump over the blocks
+     * of their posting lists without decoding them.
+     *
+     * @param cursors the cursors of the terms, which are moved to their end.
+     * @return the identifiers of the documents that are in all the posting lists, in ascending order.
+     * Empty if a term is in no document.
+     */
+    public int[] intersectAll(List<PostingsCursor> cursors) {
+        if (cursors.isEmpty() || cursors.contains(null)) {
+            return new int[0];
+        }
+        List<PostingsCursor> sorted = new ArrayList<>(cursors);
+        sorted.sort(Comparator.comparingInt(PostingsCursor::cost));
 
-            public int compare(EngineIndexPB.PostingList p1, EngineIndexPB.PostingList p2) {
-//                return if size of p1 is greater return +1, if size of p1 is smaller return -1 otherwise 0
-                if (p1.getPostingsCount() > p2.getPostingsCount()) {
-                    return 1;
-                } else if (p1.getPostingsCount() < p2.getPostingsCount()) {
-                    return -1;
-                } else {
-                    return 0;
-                }
+        IntArrayList docIds = new IntArrayList();
+        PostingsCursor lead = sorted.get(0);
+        int docId = lead.nextDoc();
+        while (docId != PostingsCursor.NO_MORE_DOCS) {
+            int next = docId;
+            for (int i = 1; i < sorted.size() && next == docId; i++) {
+                next = sorted.get(i).advance(docId);
             }
-        });
+
+            if (next == docId) {
+                docIds.add(docId);
+                docId = lead.nextDoc();
+            } else {
+                // no document before the one of the cursor that went past can be in all the lists.
+                docId = lead.advance(next);
+            }
+        }
+
+        return docIds.toArray();
     }
 
-    private void sortPostingList(List<EngineIndexPB.PostingList.Posting> postingList) {
-        postingList.sort(new Comparator<EngineIndexPB.PostingList.Posting>() {
+    private void sortListAsc(List<TermPostings> termsPostings) {
+        termsPostings.sort(new Comparator<TermPostings>() {
 
-            public int compare(EngineIndexPB.PostingList.Posting posting1, EngineIndexPB.PostingList.Posting posting2) {
-                if (posting1.getDocId() > posting2.getDocId()) {
+            public int compare(TermPostings p1, TermPostings p2) {
+//                return if size of p1 is greater return +1, if size of p1 is smaller return -1 otherwise 0
+                if (p1.size() > p2.size()) {
                     return 1;
-                } else if (posting1.getDocId() < posting2.getDocId()) {
+                } else if (p1.size() < p2.size()) {
                     return -1;
                 } else {
                     return 0;
@@ -8,11 +8,30 @@ public class EngineUtils {
             , "from", "has", "he", "in", "is", "it", "its", "of", "on", "that", "the", "to", "was"
             , "were", "will", "with"};
 
+    // maximum number of distinct words that are kept in the stem cache of the tokenizer.
+    public static final int DEFAULT_STEM_CACHE_SIZE = 100000;
+
     public static final String INDEX_DIRECTORY_NAME = "_00index";
     public static final String MAPPER_FILE_NAME = "mapperIdFiles.ser";
+    // the size, last modified time and hash of each indexed file, to re-index only the files that changed.
+    public static final String MANIFEST_FILE_NAME = "manifest.ser";
     public static final String LEXICON_FILE_NAME = "lexicon";
     public static final String LEXICON_ARRAY = "lexiconArray.ser";
+    // the first term and the offset of each block of the front coded lexicon.
+    public static final String LEXICON_INDEX_FILE_NAME = "lexiconIndex.ser";
     public static final String POSTINGS_FILE_NAME = "postings.ser";
+    // the positions of the posting lists, for the postings formats that keep them apart from the postings.
+    public static final String POSITIONS_FILE_NAME = "positions.ser";
+    // the norms of the documents, for the postings formats that compute the weights when they are read.
+    public static final String NORMS_FILE_NAME = "norms.ser";
+    // temporary directory inside the index directory, for the runs that are spilled while indexing.
+    public static final String RUNS_DIRECTORY_NAME = "tmp_runs";
+    public static final String RUN_FILE_PREFIX = "run";
+    // the segments that are added incrementally are sub folders of the index directory, listed in the segments file.
+    public static final String SEGMENTS_FILE_NAME = "segments.ser";
+    public static final String SEGMENT_DIRECTORY_PREFIX = "segment_";
+    // the deleted documents of all the segments.
+    public static final String LIVE_DOCS_FILE_NAME = "liveDocs.ser";
     // we might also want to provide this data with a xml file, for readability etc.
     public static final String META_DATA_FILE = "metadata.ser";
 }
@@ -0,0 +1,60 @@
+package com.p4ybill.engine.utils;
+
+import java.util.Arrays;
+
+/**
+ * @class Growable list of primitive ints, to avoid boxing when collecting large amounts of integers.
+ */
+public class IntArrayList {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private int[] elements;
+    private int size;
+
+    public IntArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntArrayList(int initialCapacity) {
+        this.elements = new int[Math.max(1, initialCapacity)];
+        this.size = 0;
+    }
+
+    public void add(int value) {
+        if (this.size == this.elements.length) {
+            this.grow(this.size + 1);
+        }
+        this.elements[this.size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        return this.elements[index];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the backing array. Only the first {@link #size()} elements are valid.
+     */
+    public int[] elements() {
+        return this.elements;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(this.elements, this.size);
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, this.elements.length + (this.elements.length >> 1));
+        this.elements = Arrays.copyOf(this.elements, newCapacity);
+    }
+}
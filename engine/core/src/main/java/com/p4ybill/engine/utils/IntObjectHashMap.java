@@ -0,0 +1,120 @@
+package com.p4ybill.engine.utils;
+
+import java.util.Arrays;
+
+/**
+ * @class Open addressing hash map with primitive int keys, to avoid boxing the keys.
+ * Entries can not be removed. Not thread safe.
+ *
+ * @param <V> the type of the values.
+ */
+public class IntObjectHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 16;
+    // the table is resized when it is more than half full.
+    private static final int MAX_LOAD_SHIFT = 1;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    public IntObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, expectedSize << MAX_LOAD_SHIFT) - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = this.slot(key);
+        return (V) this.values[slot];
+    }
+
+    /**
+     * @return the previous value of the key, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+
+        int slot = this.slot(key);
+        V previous = (V) this.values[slot];
+        this.keys[slot] = key;
+        this.values[slot] = value;
+
+        if (previous == null && ++this.size << MAX_LOAD_SHIFT > this.keys.length) {
+            this.resize();
+        }
+        return previous;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of slots of the table, e.g. to estimate its memory.
+     */
+    public int capacity() {
+        return this.keys.length;
+    }
+
+    /**
+     * @return a new array with all the keys, in no particular order.
+     */
+    public int[] keys() {
+        int[] result = new int[this.size];
+        int n = 0;
+        for (int i = 0; i < this.values.length; i++) {
+            if (this.values[i] != null) {
+                result[n++] = this.keys[i];
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    /**
+     * @return the slot of the key, or the empty slot where it should be put.
+     */
+    private int slot(int key) {
+        int slot = mix(key) & this.mask;
+        while (this.values[slot] != null && this.keys[slot] != key) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void resize() {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.keys = new int[oldKeys.length << 1];
+        this.values = new Object[oldValues.length << 1];
+        this.mask = this.keys.length - 1;
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = this.slot(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+}
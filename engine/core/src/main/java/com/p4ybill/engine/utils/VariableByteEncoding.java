@@ -1,64 +1,235 @@
 package com.p4ybill.engine.utils;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.Map;
 
 /**
  * @class That contains utility function for the Variable Byte Encoding.
+ * An integer is written in groups of 7 bits, the highest first, and its last byte has the highest bit set.
+ * The integers are non negative, so an integer takes 1 to {@link #MAX_LENGTH} bytes.
+ *
+ * Besides the single integers there are bulk methods that encode and decode arrays of integers into and out of
+ * a buffer or a byte array given by the caller, and their delta variants for sorted integers, which write the gaps
+ * between them. None of them allocates per integer.
  */
 public class VariableByteEncoding {
-    public static byte[] encode(int n) {
-        if (n == 0) {
-            return new byte[]{0};
-        }
-        int i = (int) (Math.log(n) / Math.log(128)) + 1;
-        byte[] rv = new byte[i];
-        int j = i - 1;
-        do {
-            rv[j--] = (byte) (n % 128);
-            n /= 128;
-        } while (j >= 0);
-        rv[i - 1] += 128;
-        return rv;
+    /**
+     * The most bytes of an encoded integer.
+     */
+    public static final int MAX_LENGTH = 5;
+
+    /**
+     * @param n a non negative integer.
+     * @return the number of bytes of the encoded integer.
+     */
+    public static int encodedLength(int n) {
+        if (n < (1 << 7)) {
+            return n < 0 ? MAX_LENGTH : 1;
+        }
+        if (n < (1 << 14)) {
+            return 2;
+        }
+        if (n < (1 << 21)) {
+            return 3;
+        }
+
+        return n < (1 << 28) ? 4 : 5;
+    }
+
+    /**
+     * @param n      the integer.
+     * @param dst    the array to write the bytes to.
+     * @param offset the index of the first byte in the array.
+     * @return the index after the last byte.
+     */
+    public static int encode(int n, byte[] dst, int offset) {
+        int end = offset + encodedLength(n);
+        dst[end - 1] = (byte) ((n & 127) | 128);
+        for (int k = end - 2; k >= offset; k--) {
+            n >>>= 7;
+            dst[k] = (byte) (n & 127);
+        }
+
+        return end;
+    }
+
+    /**
+     * @param n   the integer.
+     * @param dst the buffer to write the bytes to, from its position.
+     * @throws java.nio.BufferOverflowException if the buffer has not enough bytes left.
+     */
+    public static void encode(int n, ByteBuffer dst) {
+        for (int shift = (encodedLength(n) - 1) * 7; shift > 0; shift -= 7) {
+            dst.put((byte) ((n >>> shift) & 127));
+        }
+        dst.put((byte) ((n & 127) | 128));
+    }
+
+    /**
+     * @param values    the integers.
+     * @param offset    the index of the first integer.
+     * @param length    the number of integers.
+     * @param dst       the array to write the bytes to, with room for {@code length * MAX_LENGTH} bytes
+     *                  in the worst case.
+     * @param dstOffset the index of the first byte in the array.
+     * @return the index after the last byte.
+     */
+    public static int encode(int[] values, int offset, int length, byte[] dst, int dstOffset) {
+        for (int i = offset; i < offset + length; i++) {
+            dstOffset = encode(values[i], dst, dstOffset);
+        }
+
+        return dstOffset;
+    }
+
+    /**
+     * @param values the integers.
+     * @param offset the index of the first integer.
+     * @param length the number of integers.
+     * @param dst    the buffer to write the bytes to, from its position.
+     */
+    public static void encode(int[] values, int offset, int length, ByteBuffer dst) {
+        for (int i = offset; i < offset + length; i++) {
+            encode(values[i], dst);
+        }
+    }
+
+    /**
+     * Encodes the gaps between sorted integers, the first one from the base.
+     *
+     * @param values    the sorted integers, none less than the base.
+     * @param offset    the index of the first integer.
+     * @param length    the number of integers.
+     * @param base      the integer before the first one, 0 for the first of a list.
+     * @param dst       the array to write the bytes to.
+     * @param dstOffset the index of the first byte in the array.
+     * @return the index after the last byte.
+     */
+    public static int encodeDeltas(int[] values, int offset, int length, int base, byte[] dst, int dstOffset) {
+        for (int i = offset; i < offset + length; i++) {
+            dstOffset = encode(values[i] - base, dst, dstOffset);
+            base = values[i];
+        }
+
+        return dstOffset;
+    }
+
+    /**
+     * Encodes the gaps between sorted integers, the first one from the base.
+     *
+     * @param values the sorted integers, none less than the base.
+     * @param offset the index of the first integer.
+     * @param length the number of integers.
+     * @param base   the integer before the first one, 0 for the first of a list.
+     * @param dst    the buffer to write the bytes to, from its position.
+     */
+    public static void encodeDeltas(int[] values, int offset, int length, int base, ByteBuffer dst) {
+        for (int i = offset; i < offset + length; i++) {
+            encode(values[i] - base, dst);
+            base = values[i];
+        }
+    }
+
+    /**
+     * @param n  the integer.
+     * @param os the stream to write the bytes to.
+     * @return the number of bytes written.
+     */
+    public static int encode(int n, OutputStream os) throws IOException {
+        int length = encodedLength(n);
+        for (int shift = (length - 1) * 7; shift > 0; shift -= 7) {
+            os.write((n >>> shift) & 127);
+        }
+        os.write((n & 127) | 128);
+
+        return length;
     }
 
     /**
-     * Decodes only the first integer which will be the size of the posting list.
+     * Decodes the next integer of the stream, reading only its bytes.
      *
-     * @param ch the channel to read the bytes from.
-     * @param sizeToAllocate the size that will be allocated for the buffer
-     * @return Map.Entry<Integer, Integer> The Key is the decoded integer
-     *                                      and the Value is the length in bytes of the encoded integer in VB.
+     * @param is the stream to read the bytes from.
+     * @return the decoded integer, -1 if the stream is at its end.
+     * @throws EOFException if the stream ends in the middle of the integer.
      */
-    public static Map.Entry<Integer, Integer> decodeFirstVB(FileChannel ch, int sizeToAllocate) throws IOException {
-        ByteBuffer buf = ByteBuffer.allocateDirect(sizeToAllocate);
-        int decodedInt = -1;
+    public static int decode(InputStream is) throws IOException {
         int n = 0;
-        int counter = 0;
-        int rd;
-        while ( ((rd = ch.read(buf)) != -1)) {
-            // flip the buffer because it was filled by the channel.
-            buf.flip();
-            for (int i = 0; i < buf.capacity(); i++) {
-                counter++;
-                byte b = buf.get(i);
-                if ((b & 0xff) < 128) {
-                    n = 128 * n + b;
-                } else {
-                    decodedInt = (128 * n + ((b - 128) & 0xff));
-                    break;
-                }
+        int b = is.read();
+        if (b == -1) {
+            return -1;
+        }
+        while (b < 128) {
+            n = 128 * n + b;
+            if ((b = is.read()) == -1) {
+                throw new EOFException("The stream ends in the middle of a variable byte integer");
             }
-            // clear the buffer and prepare it for the next read from channel.
-            buf.clear();
+        }
+
+        return 128 * n + (b - 128);
+    }
 
-            if(decodedInt != -1){
-                break;
+    /**
+     * Decodes the next integer of the buffer, from its position.
+     *
+     * @param buf the buffer to read the bytes from.
+     * @return the decoded integer, -1 if the buffer has no bytes left.
+     * @throws java.nio.BufferUnderflowException if the buffer ends in the middle of the integer.
+     */
+    public static int decode(ByteBuffer buf) {
+        if (!buf.hasRemaining()) {
+            return -1;
+        }
+        int n = 0;
+        int b;
+        while ((b = buf.get() & 0xff) < 128) {
+            n = 128 * n + b;
+        }
+
+        return 128 * n + (b - 128);
+    }
+
+    /**
+     * @param src    the buffer to read the bytes from, from its position.
+     * @param values the array for the integers.
+     * @param offset the index of the first integer in the array.
+     * @param length the number of integers.
+     * @throws java.nio.BufferUnderflowException if the buffer ends before the integers.
+     */
+    public static void decode(ByteBuffer src, int[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            int n = 0;
+            int b;
+            while ((b = src.get()) >= 0) {
+                n = (n << 7) | b;
             }
+            values[i] = (n << 7) | (b & 127);
+        }
+    }
 
+    /**
+     * Decodes the gaps that were written by {@link #encodeDeltas} back to the sorted integers.
+     *
+     * @param src    the buffer to read the bytes from, from its position.
+     * @param base   the integer before the first one, 0 for the first of a list.
+     * @param values the array for the integers.
+     * @param offset the index of the first integer in the array.
+     * @param length the number of integers.
+     * @return the last integer, the base if there is none.
+     */
+    public static int decodeDeltas(ByteBuffer src, int base, int[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            int n = 0;
+            int b;
+            while ((b = src.get()) >= 0) {
+                n = (n << 7) | b;
+            }
+            base += (n << 7) | (b & 127);
+            values[i] = base;
         }
-        return Map.entry(decodedInt, counter);
+
+        return base;
     }
 }
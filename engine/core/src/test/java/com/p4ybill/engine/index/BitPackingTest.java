@@ -0,0 +1,65 @@
+package com.p4ybill.engine.index;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeNotNull;
+
+public class BitPackingTest {
+    private static final int BLOCKS = 20;
+
+    @Test
+    public void scalarUnpackerReadsThePackedValues() {
+        Random random = new Random(23);
+        BitPacking.BitUnpacker scalar = new BitPacking.ScalarBitUnpacker();
+        for (int bits = 0; bits <= 31; bits++) {
+            for (int b = 0; b < BLOCKS; b++) {
+                int[] values = randomBlock(random, bits);
+                int[] words = new int[BitPacking.MAX_WORDS];
+                BitPacking.pack(values, bits, words);
+
+                int[] unpacked = new int[BitPacking.BLOCK_SIZE];
+                scalar.unpack(words, bits, unpacked);
+                assertArrayEquals("bits " + bits, values, unpacked);
+            }
+        }
+    }
+
+    @Test
+    public void vectorUnpackerMatchesTheScalarUnpacker() {
+        BitPacking.BitUnpacker vector = BitPacking.vectorUnpacker();
+        // the vector unpacker is only there with the vectorUnpacker property and the jdk.incubator.vector module.
+        assumeNotNull(vector);
+
+        Random random = new Random(23);
+        BitPacking.BitUnpacker scalar = new BitPacking.ScalarBitUnpacker();
+        for (int bits = 0; bits <= 31; bits++) {
+            for (int b = 0; b < BLOCKS; b++) {
+                int[] words = new int[BitPacking.MAX_WORDS];
+                BitPacking.pack(randomBlock(random, bits), bits, words);
+
+                int[] expected = new int[BitPacking.BLOCK_SIZE];
+                scalar.unpack(words, bits, expected);
+                int[] unpacked = new int[BitPacking.BLOCK_SIZE];
+                vector.unpack(words, bits, unpacked);
+                assertArrayEquals("bits " + bits, expected, unpacked);
+            }
+        }
+    }
+
+    /**
+     * @return the values of a block with the given bits, the greatest one among them.
+     */
+    private static int[] randomBlock(Random random, int bits) {
+        int max = (int) ((1L << bits) - 1);
+        int[] values = new int[BitPacking.BLOCK_SIZE];
+        for (int k = 0; k < values.length; k++) {
+            values[k] = bits == 0 ? 0 : random.nextInt() & max;
+        }
+        values[random.nextInt(values.length)] = max;
+
+        return values;
+    }
+}
@@ -0,0 +1,123 @@
+package com.p4ybill.engine.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FrontCodedLexiconTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void termsAreFoundInTheBlocksAndInTheHashTable() throws IOException {
+        List<String> terms = randomTerms(1000);
+        File lexiconFile = this.writeLexicon(terms);
+        FrontCodedLexicon lexicon = FrontCodedLexicon.load(lexiconFile.getPath() + ".index");
+        TermHashTable table;
+        try (LexiconReader reader = new FrontCodedLexicon.TermReader(new FileInputStream(lexiconFile))) {
+            table = TermHashTable.build(reader, terms.size());
+        }
+
+        try (MappedIndexFile mapped = MappedIndexFile.map(lexiconFile.getPath())) {
+            for (int i = 0; i < terms.size(); i++) {
+                assertEquals(terms.get(i), i, lexicon.find(terms.get(i), mapped));
+                assertEquals(terms.get(i), i, table.find(terms.get(i)));
+
+                // a term that is between two terms of the lexicon, or after the last one.
+                String missing = terms.get(i) + "~";
+                assertEquals(missing, -1, lexicon.find(missing, mapped));
+                assertEquals(missing, -1, table.find(missing));
+            }
+            assertEquals(-1, lexicon.find("", mapped));
+        }
+    }
+
+    @Test
+    public void aLexiconWithFewerTermsThanTheLexiconArrayIsRejected() throws IOException {
+        List<String> terms = randomTerms(40);
+        File lexiconFile = this.writeLexicon(terms);
+
+        try (LexiconReader reader = new FrontCodedLexicon.TermReader(new FileInputStream(lexiconFile))) {
+            TermHashTable.build(reader, terms.size() + 1);
+            fail("The missing terms are not reported");
+        } catch (IOException e) {
+            assertEquals("The lexicon has 40 terms, the lexicon array has 41 records", e.getMessage());
+        }
+    }
+
+    @Test
+    public void aLexiconIndexWithoutAVersionIsReadWithItsIntOffsets() throws IOException {
+        List<String> terms = randomTerms(500);
+        File lexiconFile = this.writeLexicon(terms);
+
+        // the same lexicon index in the format before the version.
+        File oldIndexFile = this.folder.newFile("lexicon.oldindex");
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(lexiconFile.getPath() + ".index"));
+             DataOutputStream dos = new DataOutputStream(new FileOutputStream(oldIndexFile))) {
+            assertEquals(FrontCodedLexicon.MAGIC, dis.readInt());
+            assertEquals(FrontCodedLexicon.VERSION, dis.readInt());
+            int blocks = dis.readInt();
+            dos.writeInt(blocks);
+            for (int b = 0; b < blocks; b++) {
+                dos.writeInt((int) dis.readLong());
+                byte[] term = new byte[dis.readInt()];
+                dis.readFully(term);
+                dos.writeInt(term.length);
+                dos.write(term);
+            }
+            dos.writeInt((int) dis.readLong());
+        }
+
+        FrontCodedLexicon lexicon = FrontCodedLexicon.load(oldIndexFile.getPath());
+        try (MappedIndexFile mapped = MappedIndexFile.map(lexiconFile.getPath())) {
+            for (int i = 0; i < terms.size(); i++) {
+                assertEquals(terms.get(i), i, lexicon.find(terms.get(i), mapped));
+            }
+            assertEquals(terms.get(0), lexicon.findWithPrefix(terms.get(0), mapped).get(0));
+        }
+    }
+
+    private File writeLexicon(List<String> terms) throws IOException {
+        File lexiconFile = this.folder.newFile("lexicon");
+        try (FrontCodedLexicon.Writer writer = new FrontCodedLexicon.Writer(lexiconFile.getPath(),
+                lexiconFile.getPath() + ".index")) {
+            for (String term : terms) {
+                writer.add(term);
+            }
+        }
+
+        return lexiconFile;
+    }
+
+    /**
+     * @return sorted terms of 1 to 12 letters, many of them with a common prefix.
+     */
+    private static List<String> randomTerms(int count) {
+        Random random = new Random(19);
+        TreeSet<String> terms = new TreeSet<>();
+        while (terms.size() < count) {
+            StringBuilder term = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int c = 0; c < length; c++) {
+                term.append((char) ('a' + random.nextInt(4)));
+            }
+            terms.add(term.toString());
+        }
+
+        return new ArrayList<>(terms);
+    }
+}
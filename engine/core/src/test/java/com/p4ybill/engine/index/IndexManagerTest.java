@@ -0,0 +1,81 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.queryparser.ScoreDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexManagerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void aSegmentAfterASaveOfALoadedIndexGetsNewIdentifiers() throws IOException {
+        File dir = this.writeDocuments("corpus", "a", 3);
+        File second = this.writeDocuments("second", "b", 2);
+        File third = this.writeDocuments("third", "c", 2);
+        IndexManager first = new IndexManager(dir, new IndexConfig());
+        first.addDirectory(dir, file -> file.getName().endsWith(".txt"));
+        first.save();
+
+        IndexManager im = new IndexManager(dir, new IndexConfig());
+        im.load();
+        im.addDirectory(second, file -> file.getName().endsWith(".txt"));
+        // the documents of the second folder replace the index, with the identifiers after the loaded ones.
+        im.save();
+        im.addDirectory(third, file -> file.getName().endsWith(".txt"));
+        im.saveSegment();
+
+        List<Integer> docIds = new ArrayList<>();
+        im.searchSegments(() -> {
+            PostingsCursor cursor = im.getTermsCursors(im.getParserTokenizer().tokenize("apple")).get(0);
+            for (int docId = cursor.nextDoc(); docId != PostingsCursor.NO_MORE_DOCS; docId = cursor.nextDoc()) {
+                docIds.add(docId);
+            }
+            return null;
+        });
+        assertEquals(4, docIds.size());
+        for (int i = 1; i < docIds.size(); i++) {
+            assertTrue("the identifiers are not ascending: " + docIds, docIds.get(i - 1) < docIds.get(i));
+        }
+
+        List<ScoreDocument> scoreDocuments = new ArrayList<>();
+        for (int docId : docIds) {
+            scoreDocuments.add(new ScoreDocument(docId));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("b0.txt", "b1.txt", "c0.txt", "c1.txt")),
+                fileNames(im, scoreDocuments));
+        assertEquals(4, im.getNumberOfDocuments());
+    }
+
+    private static HashSet<String> fileNames(IndexManager im, List<ScoreDocument> scoreDocuments) {
+        HashSet<String> fileNames = new HashSet<>();
+        for (String fileName : im.getFileNames(scoreDocuments).values()) {
+            fileNames.add(new File(fileName).getName());
+        }
+
+        return fileNames;
+    }
+
+    private File writeDocuments(String folderName, String prefix, int count) throws IOException {
+        File dir = this.folder.newFolder(folderName);
+        for (int d = 0; d < count; d++) {
+            Files.write(new File(dir, prefix + d + ".txt").toPath(),
+                    ("apple river " + prefix).getBytes(StandardCharsets.UTF_8));
+        }
+
+        return dir;
+    }
+}
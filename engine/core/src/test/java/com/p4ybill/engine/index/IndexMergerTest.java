@@ -0,0 +1,69 @@
+package com.p4ybill.engine.index;
+
+import com.p4ybill.engine.queryparser.ScoreDocument;
+import com.p4ybill.engine.store.DocFileMapperPB;
+import com.p4ybill.engine.utils.EngineUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class IndexMergerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void theDocumentsOfAMapperWrittenBeforeTheDocStoreAreMerged() throws IOException {
+        File dir = this.folder.newFolder("corpus");
+        for (int d = 0; d < 3; d++) {
+            Files.write(new File(dir, "doc" + d + ".txt").toPath(),
+                    ("apple river " + d).getBytes(StandardCharsets.UTF_8));
+        }
+        IndexManager index = new IndexManager(dir, new IndexConfig());
+        index.addDirectory(dir, file -> file.getName().endsWith(".txt"));
+        index.save();
+        Map<Integer, String> fileNames = index.getFileNames(scoreDocuments(3));
+        assertEquals(3, fileNames.size());
+
+        // the mapper of an older version, with the documents in the order they were indexed.
+        String mapperFile = dir.getCanonicalPath() + "\\" + EngineUtils.INDEX_DIRECTORY_NAME + "\\"
+                + EngineUtils.MAPPER_FILE_NAME;
+        File legacyMapper = this.folder.newFile("legacyMapper");
+        try (OutputStream os = new FileOutputStream(legacyMapper)) {
+            for (int docId : new int[]{2, 1, 3}) {
+                DocFileMapperPB.DocFileMapper.Doc.newBuilder()
+                        .setDocId(docId).setFileName(fileNames.get(docId)).build().writeDelimitedTo(os);
+            }
+        }
+        // the mapped file of the index is replaced, not overwritten.
+        Files.move(legacyMapper.toPath(), new File(mapperFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        IndexManager merged = new IndexManager(this.folder.newFolder("merged"), new IndexConfig());
+        merged.merge(Collections.singletonList(dir));
+
+        assertEquals(fileNames, merged.getFileNames(scoreDocuments(3)));
+        assertEquals(3, merged.getNumberOfDocuments());
+    }
+
+    private static List<ScoreDocument> scoreDocuments(int count) {
+        List<ScoreDocument> scoreDocuments = new ArrayList<>();
+        for (int docId = 1; docId <= count; docId++) {
+            scoreDocuments.add(new ScoreDocument(docId));
+        }
+
+        return scoreDocuments;
+    }
+}
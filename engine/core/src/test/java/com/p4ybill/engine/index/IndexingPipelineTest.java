@@ -0,0 +1,56 @@
+package com.p4ybill.engine.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IndexingPipelineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 10000)
+    public void walkFailureEndsThePipeline() throws IOException {
+        File dir = this.folder.newFolder("corpus");
+        for (int d = 0; d < 10; d++) {
+            write(new File(dir, "doc" + d + ".txt"), "apple river " + d);
+        }
+        IndexManager im = new IndexManager(dir, new IndexConfig());
+
+        try {
+            im.addDirectory(dir, file -> {
+                throw new SecurityException("no access to " + file);
+            });
+            fail("The walk failure is not reported");
+        } catch (IOException e) {
+            assertEquals(SecurityException.class, e.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void unreadableFilesAreNotCounted() throws IOException {
+        File dir = this.folder.newFolder("corpus");
+        File first = new File(dir, "first.txt");
+        File second = new File(dir, "second.txt");
+        write(first, "apple river");
+        write(second, "river stone");
+        IndexManager im = new IndexManager(dir, new IndexConfig());
+
+        new IndexingPipeline(im, new IndexConfig()).run(Arrays.asList(first, new File(dir, "missing.txt"), second));
+        im.save();
+
+        assertEquals(2, im.getNumberOfDocuments());
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,217 @@
+package com.p4ybill.engine.search;
+
+import com.p4ybill.engine.index.IndexConfig;
+import com.p4ybill.engine.index.IndexManager;
+import com.p4ybill.engine.index.PostingsFormat;
+import com.p4ybill.engine.queryparser.ScoreDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how much the quantized impacts change the ranking against the weights in full precision, on a generated
+ * corpus whose words follow a Zipf distribution, and prints the difference for each number of bits.
+ */
+public class ImpactQuantizationTest {
+    private static final int DOCUMENTS = 600;
+    private static final int VOCABULARY = 300;
+    private static final int QUERIES = 300;
+    private static final int TOP = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void quantizedImpactsKeepTheRanking() throws IOException {
+        File dir = this.writeDocuments();
+        List<String> queries = queries();
+        IndexManager full = index(dir, 0);
+
+        RankingDifference bits16 = RankingDifference.measure(full, index(dir, 16), queries);
+        RankingDifference bits8 = RankingDifference.measure(full, index(dir, 8), queries);
+        System.out.println("16 bits: " + bits16);
+        System.out.println("8 bits: " + bits8);
+
+        // the weights are rounded to half a level of the greatest weight of their term.
+        assertTrue(bits16.toString(), bits16.maxRelativeError < 1e-3);
+        assertTrue(bits16.toString(), bits16.meanOverlap > 0.99);
+        assertTrue(bits8.toString(), bits8.maxRelativeError < 0.05);
+        assertTrue(bits8.toString(), bits8.meanOverlap > 0.95);
+    }
+
+    private static IndexManager index(File dir, int impactBits) throws IOException {
+        IndexConfig config = new IndexConfig();
+        config.setPostingsFormat(PostingsFormat.VBYTE_BLOCKS);
+        config.setImpactBits(impactBits);
+        // the documents are indexed by several threads, so their identifiers differ between the indexes.
+        File indexDir = new File(dir, "bits" + impactBits);
+        indexDir.mkdirs();
+        IndexManager im = new IndexManager(indexDir, config);
+        im.addDirectory(dir, file -> file.getName().endsWith(".txt"));
+        im.save();
+
+        return im;
+    }
+
+    /**
+     * Writes documents of 20 to 200 words, the word of rank r is drawn with a probability proportional to 1 / r.
+     */
+    private File writeDocuments() throws IOException {
+        File dir = this.folder.newFolder("corpus");
+        Random random = new Random(17);
+        double[] cumulative = zipf();
+        for (int d = 0; d < DOCUMENTS; d++) {
+            StringBuilder text = new StringBuilder();
+            int length = 20 + random.nextInt(181);
+            for (int w = 0; w < length; w++) {
+                text.append(word(cumulative, random)).append(' ');
+            }
+            Files.write(new File(dir, "doc" + d + ".txt").toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return dir;
+    }
+
+    /**
+     * @return queries of 1 to 4 words of the same distribution as the documents.
+     */
+    private static List<String> queries() {
+        Random random = new Random(71);
+        double[] cumulative = zipf();
+        List<String> queries = new ArrayList<>(QUERIES);
+        for (int q = 0; q < QUERIES; q++) {
+            StringBuilder query = new StringBuilder();
+            int length = 1 + random.nextInt(4);
+            for (int w = 0; w < length; w++) {
+                query.append(word(cumulative, random)).append(' ');
+            }
+            queries.add(query.toString().trim());
+        }
+
+        return queries;
+    }
+
+    private static double[] zipf() {
+        double[] cumulative = new double[VOCABULARY];
+        double sum = 0;
+        for (int r = 0; r < VOCABULARY; r++) {
+            sum += 1.0 / (r + 1);
+            cumulative[r] = sum;
+        }
+        for (int r = 0; r < VOCABULARY; r++) {
+            cumulative[r] /= sum;
+        }
+
+        return cumulative;
+    }
+
+    /**
+     * @return a word of letters only, so that the tokenizer keeps it whole.
+     */
+    private static String word(double[] cumulative, Random random) {
+        double p = random.nextDouble();
+        int rank = 0;
+        while (rank < VOCABULARY - 1 && cumulative[rank] < p) {
+            rank++;
+        }
+
+        StringBuilder word = new StringBuilder("w");
+        for (int n = rank; n > 0; n /= 26) {
+            word.append((char) ('a' + n % 26));
+        }
+        return word.append("q").toString();
+    }
+
+    /**
+     * The difference between the top documents of the full precision ranking and of the quantized one.
+     */
+    private static final class RankingDifference {
+        private int queries;
+        private int sameOrder;
+        private int sameSet;
+        private double meanOverlap;
+        private double maxRelativeError;
+
+        static RankingDifference measure(IndexManager full, IndexManager quantized, List<String> queries)
+                throws IOException {
+            RankingDifference difference = new RankingDifference();
+            double overlapSum = 0;
+            for (String query : queries) {
+                List<String> expected = new ArrayList<>();
+                Map<String, Double> expectedScores = ranking(full, query, expected);
+                List<String> actual = new ArrayList<>();
+                Map<String, Double> actualScores = ranking(quantized, query, actual);
+                if (expected.isEmpty()) {
+                    continue;
+                }
+                difference.queries++;
+
+                for (Map.Entry<String, Double> score : expectedScores.entrySet()) {
+                    if (score.getValue() > 0) {
+                        double error = Math.abs(actualScores.get(score.getKey()) - score.getValue())
+                                / score.getValue();
+                        difference.maxRelativeError = Math.max(difference.maxRelativeError, error);
+                    }
+                }
+
+                List<String> expectedTop = expected.subList(0, Math.min(TOP, expected.size()));
+                List<String> actualTop = actual.subList(0, Math.min(TOP, actual.size()));
+                Set<String> expectedFiles = new HashSet<>(expectedTop);
+                int common = 0;
+                for (String file : actualTop) {
+                    if (expectedFiles.contains(file)) {
+                        common++;
+                    }
+                }
+                overlapSum += (double) common / expectedTop.size();
+                difference.sameSet += common == expectedTop.size() ? 1 : 0;
+                difference.sameOrder += expectedTop.equals(actualTop) ? 1 : 0;
+            }
+            difference.meanOverlap = overlapSum / difference.queries;
+
+            return difference;
+        }
+
+        /**
+         * @param files the list for the file names of the ranking, the best first.
+         * @return the score of each file.
+         */
+        private static Map<String, Double> ranking(IndexManager im, String query, List<String> files)
+                throws IOException {
+            List<ScoreDocument> scores = new ScoreSearcher(im).search(query);
+            Collections.sort(scores);
+            Map<Integer, String> fileNames = im.getFileNames(scores);
+            Map<String, Double> fileScores = new HashMap<>();
+            for (ScoreDocument doc : scores) {
+                String fileName = fileNames.get(doc.getDocId());
+                files.add(fileName);
+                fileScores.put(fileName, doc.getScore());
+            }
+
+            return fileScores;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("top-%d order identical for %d/%d queries, set identical for %d/%d, "
+                            + "mean overlap %.1f%%, max relative score error %.3f%%",
+                    TOP, this.sameOrder, this.queries, this.sameSet, this.queries, 100 * this.meanOverlap,
+                    100 * this.maxRelativeError);
+        }
+    }
+}
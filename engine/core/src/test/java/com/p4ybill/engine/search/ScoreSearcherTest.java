@@ -0,0 +1,109 @@
+package com.p4ybill.engine.search;
+
+import com.p4ybill.engine.index.IndexConfig;
+import com.p4ybill.engine.index.IndexManager;
+import com.p4ybill.engine.index.PostingsFormat;
+import com.p4ybill.engine.queryparser.ScoreDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScoreSearcherTest {
+    private static final int DOCUMENTS = 300;
+    private static final String[] WORDS = {"apple", "river", "stone", "cloud", "green", "market", "silver", "window"};
+    private static final String[] QUERIES = {"apple", "apple river", "stone cloud green", "market silver window apple",
+            "river river", "unknownword apple", "deleted apple"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void topKIsTheFirstKOfTheFullRanking() throws IOException {
+        for (PostingsFormat format : PostingsFormat.values()) {
+            this.checkTopK(format, 0);
+        }
+        this.checkTopK(PostingsFormat.VBYTE_BLOCKS, 8);
+    }
+
+    @Test
+    public void topKSkipsTheDeletedDocuments() throws IOException {
+        for (PostingsFormat format : PostingsFormat.values()) {
+            this.checkTopK(format, 0, true);
+        }
+    }
+
+    private void checkTopK(PostingsFormat format, int impactBits) throws IOException {
+        this.checkTopK(format, impactBits, false);
+    }
+
+    /**
+     * @param delete true to delete every fifth document, which are the only ones with the word "deleted".
+     */
+    private void checkTopK(PostingsFormat format, int impactBits, boolean delete) throws IOException {
+        File dir = this.writeDocuments(format + "_" + impactBits + (delete ? "_deleted" : ""));
+        IndexConfig config = new IndexConfig();
+        config.setPostingsFormat(format);
+        config.setImpactBits(impactBits);
+        IndexManager im = new IndexManager(dir, config);
+        im.addDirectory(dir, file -> file.getName().endsWith(".txt"));
+        im.save();
+        if (delete) {
+            List<File> deletedFiles = new ArrayList<>();
+            for (int d = 1; d < DOCUMENTS; d += 5) {
+                deletedFiles.add(new File(dir, "doc" + d + ".txt").getCanonicalFile());
+            }
+            assertEquals(deletedFiles.size(), im.deleteDocuments(deletedFiles));
+        }
+
+        ScoreSearcher searcher = new ScoreSearcher(im);
+        for (String query : QUERIES) {
+            List<ScoreDocument> ranking = searcher.search(query);
+            Collections.sort(ranking);
+            for (int k : new int[]{1, 3, 10, 150, 1000}) {
+                List<ScoreDocument> topK = searcher.search(query, k);
+                String message = format + " " + impactBits + " [" + query + "] k=" + k;
+                assertEquals(message, Math.min(k, ranking.size()), topK.size());
+                for (int i = 0; i < topK.size(); i++) {
+                    assertEquals(message, ranking.get(i).getDocId(), topK.get(i).getDocId());
+                    assertEquals(message, ranking.get(i).getScore(), topK.get(i).getScore(), 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes more documents than a block of postings, many of them with the same text, so their scores are tied.
+     */
+    private File writeDocuments(String name) throws IOException {
+        File dir = this.folder.newFolder(name);
+        Random random = new Random(42);
+        for (int d = 0; d < DOCUMENTS; d++) {
+            StringBuilder text = new StringBuilder();
+            if (d % 3 == 0) {
+                text.append("apple river");
+            } else {
+                int length = 1 + random.nextInt(12);
+                for (int w = 0; w < length; w++) {
+                    text.append(WORDS[random.nextInt(1 + random.nextInt(WORDS.length))]).append(' ');
+                }
+            }
+            if (d % 5 == 1) {
+                text.append(" deleted");
+            }
+            Files.write(new File(dir, "doc" + d + ".txt").toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return dir;
+    }
+}
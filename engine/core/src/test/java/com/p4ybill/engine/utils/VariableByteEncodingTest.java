@@ -0,0 +1,66 @@
+package com.p4ybill.engine.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class VariableByteEncodingTest {
+    @Test
+    public void theBulkEncodersWriteTheBytesOfTheSingleIntegers() throws IOException {
+        Random random = new Random(23);
+        int[] values = new int[500];
+        for (int i = 0; i < values.length; i++) {
+            // integers of 1 to 5 bytes, and the bounds of each length.
+            values[i] = i < 10 ? new int[]{0, 127, 128, 16383, 16384, 2097151, 2097152, 268435455, 268435456,
+                    Integer.MAX_VALUE}[i] : random.nextInt() >>> random.nextInt(32);
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        for (int value : values) {
+            VariableByteEncoding.encode(value, os);
+        }
+        byte[] expected = os.toByteArray();
+
+        byte[] array = new byte[values.length * VariableByteEncoding.MAX_LENGTH];
+        assertEquals(expected.length, VariableByteEncoding.encode(values, 0, values.length, array, 0));
+        assertArrayEquals(expected, Arrays.copyOf(array, expected.length));
+
+        ByteBuffer buf = ByteBuffer.allocate(values.length * VariableByteEncoding.MAX_LENGTH);
+        VariableByteEncoding.encode(values, 0, values.length, buf);
+        assertArrayEquals(expected, Arrays.copyOf(buf.array(), buf.position()));
+
+        int[] decoded = new int[values.length];
+        VariableByteEncoding.decode(ByteBuffer.wrap(expected), decoded, 0, decoded.length);
+        assertArrayEquals(values, decoded);
+    }
+
+    @Test
+    public void theDeltasAreDecodedBackToTheSortedIntegers() {
+        Random random = new Random(29);
+        int[] values = new int[300];
+        int base = 1000;
+        int previous = base;
+        for (int i = 0; i < values.length; i++) {
+            previous += random.nextInt(1 << random.nextInt(20));
+            values[i] = previous;
+        }
+
+        byte[] array = new byte[values.length * VariableByteEncoding.MAX_LENGTH];
+        int end = VariableByteEncoding.encodeDeltas(values, 0, values.length, base, array, 0);
+        ByteBuffer buf = ByteBuffer.allocate(array.length);
+        VariableByteEncoding.encodeDeltas(values, 0, values.length, base, buf);
+        assertEquals(end, buf.position());
+        assertArrayEquals(Arrays.copyOf(array, end), Arrays.copyOf(buf.array(), end));
+
+        int[] decoded = new int[values.length + 1];
+        int last = VariableByteEncoding.decodeDeltas(ByteBuffer.wrap(array, 0, end), base, decoded, 1, values.length);
+        assertEquals(values[values.length - 1], last);
+        assertArrayEquals(values, Arrays.copyOfRange(decoded, 1, decoded.length));
+    }
+}
@@ -7,9 +7,9 @@ import com.p4ybill.engine.queryparser.ScoreDocument;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
 
 public class Engine {
     private File dir;
@@ -17,12 +17,20 @@ public class Engine {
     private IndexManager im;
 
     public Engine(String dirName) {
+        this(dirName, new IndexConfig());
+    }
+
+    /**
+     * @param dirName the directory to index or to load the index from.
+     * @param config  options that control the indexing.
+     */
+    public Engine(String dirName, IndexConfig config) {
         File dir = new File(dirName);
         if(!dir.isDirectory() || !dir.exists()){
             throw new IllegalStateException("Directory : " + dirName + " does not exists or it is not a directory");
         }
         this.dir = dir;
-        this.im = new IndexManager(dir);
+        this.im = new IndexManager(dir, config);
         this.queryParser = new QueryParser(im);
 
     }
@@ -32,25 +40,77 @@ public class Engine {
         this.im.save();
     }
 
-    private void indexFiles(){
-        this.walkingFiles(this.dir.listFiles());
+    /**
+     * Adds the text files under the given directory to the existing index as a new segment,
+     * without indexing the already indexed files again.
+     *
+     * @param dirName the directory with the new files.
+     * @throws IOException
+     */
+    public void indexNewDocs(String dirName) throws IOException {
+        File newDocsDir = new File(dirName);
+        if(!newDocsDir.isDirectory() || !newDocsDir.exists()){
+            throw new IllegalStateException("Directory : " + dirName + " does not exists or it is not a directory");
+        }
+
+        // the loaded index gives the new documents identifiers after the existing ones.
+        if(this.isAlreadyIndexed()){
+            this.im.load();
+        }
+        this.im.addDirectory(newDocsDir, this::isTextFile);
+        this.im.saveSegment();
     }
 
-    private void walkingFiles(File[] files){
-        Stream.of(files).parallel().forEach(f -> {
-            if(f.isDirectory()){
-                walkingFiles(f.listFiles());
-            }else{
-                this.processFile(f);
-            }
-        });
+    /**
+     * Re-indexes only the text files of the directory that were added, changed or removed since they were indexed.
+     *
+     * @return the files that were added, changed or removed.
+     * @throws IOException
+     */
+    public IndexChanges indexChangedDocs() throws IOException {
+        return this.im.indexChanges(this.dir, this::isTextFile);
+    }
 
+    /**
+     * Removes the given files from the existing index.
+     *
+     * @param files the indexed files that were removed or should not be searched anymore.
+     * @return the number of documents that were deleted.
+     * @throws IOException
+     */
+    public int deleteDocs(List<File> files) throws IOException {
+        this.im.load();
+        return this.im.deleteDocuments(files);
     }
 
-    private void processFile(File file){
-        if (this.isTextFile(file)) {
-            im.addDocument(file);
+    /**
+     * Re-indexes the given files of the existing index, after they were edited.
+     *
+     * @param files the indexed files that changed.
+     * @throws IOException
+     */
+    public void updateDocs(List<File> files) throws IOException {
+        this.im.load();
+        this.im.updateDocuments(files);
+    }
+
+    /**
+     * Replaces the index of the directory with the merged indexes of the given directories,
+     * which were indexed separately.
+     *
+     * @param dirNames the indexed directories, in the order their documents get identifiers.
+     * @throws IOException
+     */
+    public void mergeIndexes(List<String> dirNames) throws IOException {
+        List<File> indexedDirs = new ArrayList<>();
+        for (String dirName : dirNames) {
+            indexedDirs.add(new File(dirName));
         }
+        this.im.merge(indexedDirs);
+    }
+
+    private void indexFiles() throws IOException {
+        this.im.addDirectory(this.dir, this::isTextFile);
     }
 
     public QueryResult query(String queryString) throws IOException {
@@ -60,6 +120,19 @@ public class Engine {
         return new QueryResult(res, fileNames);
     }
 
+    /**
+     * @param queryString the query.
+     * @param k           the number of documents to return.
+     * @return the k documents with the highest scores, the first k documents of a boolean query.
+     * @throws IOException
+     */
+    public QueryResult query(String queryString, int k) throws IOException {
+        List<ScoreDocument> res = queryParser.query(queryString, k);
+        Map<Integer, String> fileNames = this.im.getFileNames(res);
+
+        return new QueryResult(res, fileNames);
+    }
+
     /**
      * Returns true if the file is a .txt file.
      *
@@ -1,11 +1,14 @@
 package com.p4ybill.gui;
 import com.p4ybill.engine.demo.Engine;
+import com.p4ybill.engine.index.IndexChanges;
 import com.p4ybill.engine.queryparser.QueryResult;
 
 import java.io.*;
 import java.util.Scanner;
 
 public class Main{
+    // the documents shown for a query, the ones with the highest scores.
+    private static final int MAX_RESULTS = 10;
 
     public static void main(String[] args) throws IOException {
         // TODO: Create a JavaFx gui app
@@ -60,7 +63,7 @@ public class Main{
             if(!query.isEmpty() && !query.isBlank() && !query.equals(exitString)) {
                 try {
                     System.out.println(query);
-                    QueryResult res = engine.query(query);
+                    QueryResult res = engine.query(query, MAX_RESULTS);
                     printResultDocs(res);
                 } catch (IOException e) {}
             }
@@ -90,7 +93,8 @@ public class Main{
     /**
      * Checks if the folder provided is already indexed.
      * If not, index the folder.
-     * If its indexed, asks the user if he want to re-index or to use the old indexed files.
+     * If its indexed, asks the user if he want to re-index, to use the old indexed files
+     * or to add new files to the old indexed files.
      *
      * @param engine
      * @param scanner
@@ -98,10 +102,14 @@ public class Main{
      */
     private static void getEngineReady(Engine engine, Scanner scanner) throws IOException {
         if(engine.isAlreadyIndexed()){
-            boolean wantToLoad = wantToLoad(scanner);
+            String loadAnswer = getLoadAnswer(scanner);
 
-            if(wantToLoad){
+            if(loadAnswer.equals("l")){
                 engine.load();
+            }else if(loadAnswer.equals("a")){
+                engineIndexNewDocs(engine, scanner);
+            }else if(loadAnswer.equals("c")){
+                engineIndexChangedDocs(engine);
             }else{
                 engineIndexDocs(engine);
             }
@@ -123,21 +131,58 @@ public class Main{
     }
 
     /**
-     * Asks the user if he wants to re-index or to load the old files related to the index.
+     * Re-indexes only the docs of the folder that were added, changed or removed since the last indexing.
      *
+     * @param engine
+     * @throws IOException
+     */
+    private static void engineIndexChangedDocs(Engine engine) throws IOException {
+        System.out.println("Indexing...");
+        IndexChanges changes = engine.indexChangedDocs();
+        System.out.printf("Done indexing: %d added, %d changed, %d removed files\n",
+                changes.getAdded().size(), changes.getChanged().size(), changes.getRemoved().size());
+    }
+
+    /**
+     * Adds the docs of another folder to the old indexed files, without re-indexing the old ones.
+     *
+     * @param engine
      * @param scanner
-     * @return
+     * @throws IOException
+     */
+    private static void engineIndexNewDocs(Engine engine, Scanner scanner) throws IOException {
+        while(true){
+            String newDocsPath = getCorrectFilePathFromUser(scanner, "Please type the folder with the new files: ");
+            try{
+                System.out.println("Indexing...");
+                engine.indexNewDocs(newDocsPath);
+                System.out.println("Done indexing");
+                break;
+            }catch (IllegalStateException ise){
+                System.out.println(ise.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Asks the user if he wants to re-index, to load the old files related to the index,
+     * to re-index only the changed files or to add new files to them.
+     *
+     * @param scanner
+     * @return "l" to load, "ri" to re-index, "c" to re-index the changed files or "a" to add new files.
      */
-    private static boolean wantToLoad(Scanner scanner){
+    private static String getLoadAnswer(Scanner scanner){
         String loadAnswer = "";
         System.out.println("Looks like the given folder is already indexed");
-        while(!loadAnswer.equals("l") && !loadAnswer.equals("ri")){
-            System.out.println("Do you want to load the files or re-index? (type l for load or ri for re-index)");
+        while(!loadAnswer.equals("l") && !loadAnswer.equals("ri") && !loadAnswer.equals("c")
+                && !loadAnswer.equals("a")){
+            System.out.println("Do you want to load the files, re-index, re-index the changed files or add new files? " +
+                    "(type l for load, ri for re-index, c for the changed files or a to add the files of another folder)");
 
             loadAnswer = scanner.nextLine();
         }
 
-        return loadAnswer.equals("l");
+        return loadAnswer;
     }
 
     /**
@@ -147,9 +192,20 @@ public class Main{
      * @return
      */
     private static String getCorrectFilePathFromUser(Scanner scanner){
+        return getCorrectFilePathFromUser(scanner, "Please type the folder you want to index: ");
+    }
+
+    /**
+     * Gets a valid folder path from user input.
+     *
+     * @param scanner
+     * @param message the message that asks for the folder.
+     * @return
+     */
+    private static String getCorrectFilePathFromUser(Scanner scanner, String message){
         String filePath = "";
         while(filePath.equals("")){
-            System.out.println("Please type the folder you want to index: ");
+            System.out.println(message);
             filePath = scanner.nextLine();
         }
 